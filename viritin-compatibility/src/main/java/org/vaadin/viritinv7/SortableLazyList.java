@@ -1,6 +1,7 @@
 package org.vaadin.viritinv7;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.List;
 import org.vaadin.viritin.LazyList;
 
@@ -161,6 +162,14 @@ public class SortableLazyList<T> extends LazyList<T> implements Serializable {
         return sortablePageProvider.findEntities(i, isSortAscending(), sortProp);
     }
 
+    @Override
+    protected Object getSortKey() {
+        if (sortProperty == null || sortProperty.length == 0) {
+            return null;
+        }
+        return Arrays.toString(sortProperty) + Arrays.toString(sortAscending);
+    }
+
     public boolean isSortAscending() {
         return sortAscending[0];
     }
@@ -3,6 +3,7 @@ package org.vaadin.viritinv7.fields;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.vaadin.viritin.LazyList;
@@ -31,11 +32,15 @@ public class LazyComboBox<T> extends TypedSelect<T> {
 
     private static final long serialVersionUID = 2332969066755466769L;
 
+    // the filter of a prefetch, captured on the UI thread when it was scheduled
+    private static final ThreadLocal<String[]> SCHEDULED_FILTER = new ThreadLocal<>();
+
     private String currentFilter;
     private FilterablePagingProvider<T> fpp;
     private FilterableCountProvider fcp;
     private String lastRawFilter;
     private boolean useRawFilter = false;
+    private transient Executor backendExecutor;
 
     /**
      * Interface via the LazyComboBox communicates with the "backend"
@@ -116,23 +121,14 @@ public class LazyComboBox<T> extends TypedSelect<T> {
         initList(elementType, filterablePageProvider, countProvider, pageLength);
     }
 
-    protected final ComboBox initList(
-            Class<T> elementType,
-            FilterablePagingProvider<T> filterablePageProvider,
-            FilterableCountProvider countProvider1, int pageLength) {
-
-        this.fpp = filterablePageProvider;
-        this.fcp = countProvider1;
-
-        // piggyback to simple paging provider
-        piggybackLazyList = new LazyList<>(new LazyList.PagingProvider<T>() {
+    private LazyList<T> createLazyList(int pageLength) {
+        LazyList<T> list = new LazyList<>(new LazyList.PagingProvider<T>() {
 
             private static final long serialVersionUID = 1027614132444478021L;
 
             @Override
             public List<T> findEntities(int firstRow) {
-                return fpp.findEntities(firstRow,
-                        getCurrentFilter());
+                return fpp.findEntities(firstRow, getFilterForBackend());
             }
         },
                 new LazyList.CountProvider() {
@@ -140,9 +136,55 @@ public class LazyComboBox<T> extends TypedSelect<T> {
 
             @Override
             public int size() {
-                return fcp.size(getCurrentFilter());
+                return fcp.size(getFilterForBackend());
             }
         }, pageLength);
+        list.setPrefetchExecutor(createPrefetchExecutor());
+        return list;
+    }
+
+    /**
+     * @return the filter captured when a background fetch was scheduled, or
+     * the current filter when called from the UI thread
+     */
+    private String getFilterForBackend() {
+        String[] captured = SCHEDULED_FILTER.get();
+        return captured != null ? captured[0] : getCurrentFilter();
+    }
+
+    /**
+     * Wraps the backend executor so that the filter is read on the UI thread
+     * when a prefetch is scheduled, and passed to the background thread,
+     * instead of reading the mutable filter of the field from there.
+     */
+    private Executor createPrefetchExecutor() {
+        final Executor executor = backendExecutor;
+        if (executor == null) {
+            return null;
+        }
+        return task -> {
+            final String[] filter = {getCurrentFilter()};
+            executor.execute(() -> {
+                SCHEDULED_FILTER.set(filter);
+                try {
+                    task.run();
+                } finally {
+                    SCHEDULED_FILTER.remove();
+                }
+            });
+        };
+    }
+
+    protected final ComboBox initList(
+            Class<T> elementType,
+            FilterablePagingProvider<T> filterablePageProvider,
+            FilterableCountProvider countProvider1, int pageLength) {
+
+        this.fpp = filterablePageProvider;
+        this.fcp = countProvider1;
+
+        // piggyback to simple paging provider
+        piggybackLazyList = createLazyList(pageLength);
 
         final ComboBox comboBox = new ComboBox() {
 
@@ -244,24 +286,7 @@ public class LazyComboBox<T> extends TypedSelect<T> {
         this.fpp = filterablePagingProvider;
         this.fcp = filterableCountProvider;
         // Need to re-create the piggybackList & set container, some refactoring should be done here
-        piggybackLazyList = new LazyList<>(new LazyList.PagingProvider<T>() {
-
-            private static final long serialVersionUID = 1027614132444478021L;
-
-            @Override
-            public List<T> findEntities(int firstRow) {
-                return fpp.findEntities(firstRow,
-                        getCurrentFilter());
-            }
-        },
-                new LazyList.CountProvider() {
-            private static final long serialVersionUID = -7339189124024626177L;
-
-            @Override
-            public int size() {
-                return fcp.size(getCurrentFilter());
-            }
-        }, pageLength);
+        piggybackLazyList = createLazyList(pageLength);
         setBic(new DummyFilterableListContainer<T>(getType(),
                 piggybackLazyList));
         getSelect().setContainerDataSource(getBic());
@@ -297,6 +322,30 @@ public class LazyComboBox<T> extends TypedSelect<T> {
         markAsDirty();
     }
 
+    public Executor getBackendExecutor() {
+        return backendExecutor;
+    }
+
+    /**
+     * Sets an executor to fetch the next page of options in the background,
+     * while the user is browsing the current one, see
+     * {@link LazyList#setPrefetchExecutor(Executor)}. The providers are then
+     * called also from the threads of the executor, so they must be thread
+     * safe. The filter is captured on the UI thread when a prefetch is
+     * scheduled, and prefetched pages are dropped when the filter changes.
+     *
+     * @param backendExecutor the executor, e.g. from
+     * {@link org.vaadin.viritin.util.BackendExecutors}, null to fetch options
+     * only on demand (the default)
+     */
+    public void setBackendExecutor(Executor backendExecutor) {
+        this.backendExecutor = backendExecutor;
+        // otherwise applied when the list is created in initList
+        if (piggybackLazyList != null) {
+            piggybackLazyList.setPrefetchExecutor(createPrefetchExecutor());
+        }
+    }
+
     public String getCurrentFilter() {
         return useRawFilter ? lastRawFilter : currentFilter;
     }
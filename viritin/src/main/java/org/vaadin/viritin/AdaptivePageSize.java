@@ -0,0 +1,106 @@
+package org.vaadin.viritin;
+
+import java.io.Serializable;
+
+/**
+ * The state behind the adaptive page size of a {@link LazyList}: the measured
+ * latency of the backend calls, how many rows of the fetched data are actually
+ * used and how far apart the accessed rows are.
+ *
+ * @see LazyList#setAdaptivePageSize(int, int)
+ */
+class AdaptivePageSize implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Thresholds for adaptive page size, in milliseconds per backend call
+    private static final double SLOW_FETCH_MILLIS = 100;
+    private static final double FAST_FETCH_MILLIS = 10;
+    // The number of backend calls between page size adjustments
+    private static final int ADJUSTMENT_INTERVAL = 4;
+
+    private final int minPageSize;
+    private final int maxPageSize;
+    private double averageFetchMillis;
+    private double averageRowsPerFetch;
+    private double averageStride;
+    private int lastAccessedIndex = -1;
+    private int firstIndexSinceFetch = Integer.MAX_VALUE;
+    private int lastIndexSinceFetch = -1;
+    private int fetchesSinceAdjustment;
+    private int prefetchDepth = 1;
+
+    /**
+     * @param minPageSize the smallest page size to use
+     * @param maxPageSize the largest page size to use
+     */
+    AdaptivePageSize(int minPageSize, int maxPageSize) {
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * Records an access to the list.
+     *
+     * @param index the accessed index
+     * @return true if enough backend calls have been measured to adjust the
+     * page size
+     */
+    boolean recordAccess(int index) {
+        if (lastAccessedIndex >= 0) {
+            averageStride = 0.7 * averageStride + 0.3 * Math.abs(index - lastAccessedIndex);
+        }
+        lastAccessedIndex = index;
+        firstIndexSinceFetch = Math.min(firstIndexSinceFetch, index);
+        lastIndexSinceFetch = Math.max(lastIndexSinceFetch, index);
+        return fetchesSinceAdjustment >= ADJUSTMENT_INTERVAL;
+    }
+
+    /**
+     * Records a backend call.
+     *
+     * @param millis the latency of the call in milliseconds
+     */
+    void recordFetch(double millis) {
+        averageFetchMillis = fetchesSinceAdjustment == 0 && averageFetchMillis == 0
+                ? millis : 0.7 * averageFetchMillis + 0.3 * millis;
+        if (lastIndexSinceFetch >= 0) {
+            // rows actually used from the previously fetched data
+            int rowsUsed = lastIndexSinceFetch - firstIndexSinceFetch + 1;
+            averageRowsPerFetch = 0.7 * averageRowsPerFetch + 0.3 * rowsUsed;
+        }
+        firstIndexSinceFetch = Integer.MAX_VALUE;
+        lastIndexSinceFetch = -1;
+        fetchesSinceAdjustment++;
+    }
+
+    /**
+     * Tunes the page size and prefetch depth based on the measured backend
+     * latency and access pattern: slow backends that are scrolled through get
+     * larger pages, fast backends and random access smaller ones.
+     *
+     * @param pageSize the current page size
+     * @return the page size to use, within the bounds
+     */
+    int adjust(int pageSize) {
+        fetchesSinceAdjustment = 0;
+        final double utilization = averageRowsPerFetch / pageSize;
+        final boolean randomAccess = averageStride >= pageSize;
+        int newPageSize = pageSize;
+        if (averageFetchMillis >= SLOW_FETCH_MILLIS && utilization >= 0.5 && !randomAccess) {
+            newPageSize = pageSize * 2;
+        } else if (averageFetchMillis <= FAST_FETCH_MILLIS && utilization < 0.5
+                || randomAccess && utilization < 0.25) {
+            newPageSize = pageSize / 2;
+        }
+        prefetchDepth = averageFetchMillis >= SLOW_FETCH_MILLIS ? 2 : 1;
+        return Math.max(minPageSize, Math.min(maxPageSize, newPageSize));
+    }
+
+    /**
+     * @return the prefetch depth suggested by the latest adjustment
+     */
+    int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+}
@@ -0,0 +1,456 @@
+package org.vaadin.viritin;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.vaadin.viritin.cache.PageCache;
+import org.vaadin.viritin.cache.SingleFlight;
+
+/**
+ * A thread safe variant of {@link LazyList}, for cases where the same list is
+ * read from several threads, e.g. background report threads or UI.access
+ * blocks overlapping with request handling.
+ * <p>
+ * Loaded pages are kept in a concurrent map, so reading already loaded pages
+ * doesn't need locking. Locking is done per page: if several threads miss the
+ * same page at the same time, only one of them calls the backend and the
+ * others wait for and share its result. The backend may still be called
+ * concurrently for different pages, so the providers must be thread safe.
+ * <p>
+ * By default the list keeps at most {@link #getMaxPages()} pages in memory,
+ * evicting the pages farthest from the most recently loaded one. A
+ * {@link PageCache} can be used instead, in which case reading the pages is
+ * synchronized, as page caches are not thread safe. Prefetching, adaptive page
+ * size and asynchronous counting work like in LazyList. Full scans, i.e.
+ * {@link #iterator()}, streams and indexOf without an index provider, read
+ * the pages through the same locking and keep them like {@link #get(int)}
+ * does. The list should be configured before it is shared between threads.
+ *
+ * @param <T> The type of the objects in the list
+ */
+public class ConcurrentLazyList<T> extends LazyList<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    // serialized in writeObject, unless compact serialization is used
+    private transient ConcurrentHashMap<Long, List<T>> loadedPages = new ConcurrentHashMap<>();
+    private transient SingleFlight<Long, List<T>> pendingPages;
+    private transient volatile Integer cachedSize;
+    private volatile int generation;
+    private volatile int currentPageSize;
+    private volatile int lastRequestedPage = -1;
+
+    /**
+     * Constructs a new ConcurrentLazyList with given provider and default page
+     * size of DEFAULT_PAGE_SIZE.
+     *
+     * @param dataProvider the data provider that is used to fetch pages of
+     * entities and to detect the total count of entities
+     */
+    public ConcurrentLazyList(EntityProvider<T> dataProvider) {
+        super(dataProvider);
+        currentPageSize = getPageSize();
+    }
+
+    /**
+     * Constructs a new ConcurrentLazyList with given provider and page size.
+     *
+     * @param dataProvider the data provider that is used to fetch pages of
+     * entities and to detect the total count of entities
+     * @param pageSize the page size to be used
+     */
+    public ConcurrentLazyList(EntityProvider<T> dataProvider, int pageSize) {
+        super(dataProvider, pageSize);
+        currentPageSize = pageSize;
+    }
+
+    /**
+     * Constructs a new ConcurrentLazyList with given providers and default
+     * page size of DEFAULT_PAGE_SIZE.
+     *
+     * @param pageProvider the interface via "pages" of entities are requested
+     * @param countProvider the interface via the total count of entities is
+     * detected.
+     */
+    public ConcurrentLazyList(PagingProvider<T> pageProvider, CountProvider countProvider) {
+        super(pageProvider, countProvider);
+        currentPageSize = getPageSize();
+    }
+
+    /**
+     * Constructs a new ConcurrentLazyList with given providers and page size.
+     *
+     * @param pageProvider the interface via "pages" of entities are requested
+     * @param countProvider the interface via the total count of entities is
+     * detected.
+     * @param pageSize the page size that should be used
+     */
+    public ConcurrentLazyList(PagingProvider<T> pageProvider, CountProvider countProvider, int pageSize) {
+        super(pageProvider, countProvider, pageSize);
+        currentPageSize = pageSize;
+    }
+
+    /**
+     * Constructs a new ConcurrentLazyList with given providers and page size.
+     * The range provider makes it possible to use an adaptive page size.
+     *
+     * @param rangeProvider the interface via ranges of entities are requested
+     * @param countProvider the interface via the total count of entities is
+     * detected.
+     * @param pageSize the page size that should be used
+     */
+    public ConcurrentLazyList(RangePagingProvider<T> rangeProvider, CountProvider countProvider, int pageSize) {
+        super(rangeProvider, countProvider, pageSize);
+        currentPageSize = pageSize;
+    }
+
+    private synchronized SingleFlight<Long, List<T>> getPendingPages() {
+        if (pendingPages == null) {
+            pendingPages = new SingleFlight<>();
+        }
+        return pendingPages;
+    }
+
+    /**
+     * Pages are identified by their index and the page size, so that pages
+     * loaded before the page size was adjusted are never mixed with others.
+     */
+    private static Long pageKey(int pageIndex, int pageSize) {
+        return ((long) pageSize << 32) | (pageIndex & 0xffffffffL);
+    }
+
+    private static int pageIndexOf(Long pageKey) {
+        return (int) pageKey.longValue();
+    }
+
+    @Override
+    public T get(int index) {
+        final int pageSize = currentPageSize;
+        final int pageIndex = index / pageSize;
+        if (isAdaptivePageSize()) {
+            synchronized (this) {
+                recordAccess(index);
+            }
+        }
+        List<T> page = getPage(pageIndex, pageSize);
+        if (getPrefetchExecutor() != null) {
+            prefetch(pageIndex, pageSize);
+        }
+        final int indexOnPage = index % pageSize;
+        if (indexOnPage >= page.size() && cachedSize == null && getCountExecutor() != null) {
+            // beyond the end of the list while the size is estimated
+            return null;
+        }
+        return page.get(indexOnPage);
+    }
+
+    private List<T> getPage(final int pageIndex, final int pageSize) {
+        List<T> page = findLoadedPage(pageIndex, pageSize);
+        final MetricsListener metrics = getMetricsListener();
+        if (metrics != null) {
+            if (page != null) {
+                metrics.cacheHit(pageIndex);
+            } else {
+                metrics.cacheMiss(pageIndex);
+            }
+        }
+        return page != null ? page : loadPage(pageIndex, pageSize);
+    }
+
+    /**
+     * Loads the page from the backend, or waits for another thread already
+     * loading it.
+     */
+    private List<T> loadPage(final int pageIndex, final int pageSize) {
+        final int loadGeneration = generation;
+        return getPendingPages().execute(pageKey(pageIndex, pageSize), () -> {
+            // a call that just completed may have stored it
+            List<T> loaded = findLoadedPage(pageIndex, pageSize);
+            if (loaded == null) {
+                final long start = nanoTime();
+                loaded = fetchPage(pageIndex, pageSize);
+                storePage(pageIndex, pageSize, loaded, loadGeneration, start);
+            }
+            return loaded;
+        });
+    }
+
+    private List<T> findLoadedPage(int pageIndex, int pageSize) {
+        if (getPageCache() == null) {
+            return loadedPages.get(pageKey(pageIndex, pageSize));
+        }
+        synchronized (this) {
+            return pageSize == currentPageSize ? getPageCache().get(pageIndex) : null;
+        }
+    }
+
+    /**
+     * Stores a loaded page, unless the list has been invalidated or the page
+     * size has changed after the load was started. Checked under the same
+     * lock that invalidation takes, so a stale page is never stored.
+     */
+    private synchronized void storePage(int pageIndex, int pageSize, List<T> page,
+            int loadGeneration, long startNanos) {
+        if (isAdaptivePageSize()) {
+            // may adjust the page size
+            recordFetch(startNanos);
+        }
+        if (loadGeneration != generation || pageSize != currentPageSize) {
+            return;
+        }
+        PageCache<T> pageCache = getPageCache();
+        if (pageCache != null) {
+            pageCache.put(pageIndex, page);
+        } else {
+            loadedPages.put(pageKey(pageIndex, pageSize), page);
+            evictPagesFarFrom(pageIndex);
+        }
+    }
+
+    private void evictPagesFarFrom(int pageIndex) {
+        while (loadedPages.size() > getMaxPages()) {
+            Long farthest = null;
+            for (Long key : loadedPages.keySet()) {
+                if (farthest == null || Math.abs(pageIndexOf(key) - pageIndex)
+                        > Math.abs(pageIndexOf(farthest) - pageIndex)) {
+                    farthest = key;
+                }
+            }
+            if (farthest == null || pageIndexOf(farthest) == pageIndex) {
+                return;
+            }
+            loadedPages.remove(farthest);
+        }
+    }
+
+    /**
+     * Loads the pages next to the requested one in the direction the list is
+     * being accessed with the prefetch executor. Threads needing a page while
+     * it is being prefetched wait for the prefetch.
+     */
+    private void prefetch(final int pageIndex, final int pageSize) {
+        final int previous = lastRequestedPage;
+        if (pageIndex == previous) {
+            return;
+        }
+        lastRequestedPage = pageIndex;
+        final Executor executor = getPrefetchExecutor();
+        final int direction = pageIndex < previous ? -1 : 1;
+        for (int i = 1; i <= getPrefetchDepth(); i++) {
+            final int page = pageIndex + i * direction;
+            final Integer size = cachedSize;
+            if (page < 0 || size != null && page * pageSize >= size) {
+                return;
+            }
+            if (findLoadedPage(page, pageSize) != null
+                    || getPendingPages().isInFlight(pageKey(page, pageSize))) {
+                continue;
+            }
+            executor.execute(() -> {
+                try {
+                    loadPage(page, pageSize);
+                } catch (RuntimeException e) {
+                    // loaded again when needed
+                }
+            });
+        }
+    }
+
+    @Override
+    void pageSizeChanged() {
+        // called with the lock held, pages being loaded are dropped
+        generation++;
+        loadedPages.clear();
+        currentPageSize = getPageSize();
+    }
+
+    @Override
+    public int size() {
+        Integer size = cachedSize;
+        if (size == null) {
+            size = resolveSize();
+        }
+        return size;
+    }
+
+    private synchronized int resolveSize() {
+        if (cachedSize == null) {
+            int size = super.size();
+            if (!super.isSizeKnown()) {
+                // estimated while counting in the background
+                return size;
+            }
+            cachedSize = size;
+        }
+        return cachedSize;
+    }
+
+    @Override
+    public boolean isSizeKnown() {
+        return cachedSize != null;
+    }
+
+    @Override
+    int estimateSizeFromPages() {
+        if (getPageCache() != null) {
+            return super.estimateSizeFromPages();
+        }
+        int known = 0;
+        for (Map.Entry<Long, List<T>> entry : loadedPages.entrySet()) {
+            known = Math.max(known, estimateSize(pageIndexOf(entry.getKey()), entry.getValue()));
+        }
+        return known;
+    }
+
+    @Override
+    synchronized Map<Object, Integer> getIndexCache() {
+        return super.getIndexCache();
+    }
+
+    @Override
+    Map<Object, Integer> createIndexCache() {
+        return Collections.synchronizedMap(super.createIndexCache());
+    }
+
+    @Override
+    Integer findIndexFromCachedPages(Object o) {
+        PageCache<T> pageCache = getPageCache();
+        if (pageCache != null) {
+            synchronized (this) {
+                final int pageSize = currentPageSize;
+                Integer[] found = new Integer[1];
+                pageCache.forEachPage((i, page) -> {
+                    int indexOf = page.indexOf(o);
+                    if (indexOf != -1) {
+                        found[0] = i * pageSize + indexOf;
+                    }
+                });
+                return found[0];
+            }
+        }
+        final int pageSize = currentPageSize;
+        for (Map.Entry<Long, List<T>> entry : loadedPages.entrySet()) {
+            int indexOf = entry.getValue().indexOf(o);
+            if (indexOf != -1) {
+                return pageIndexOf(entry.getKey()) * pageSize + indexOf;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Scans the list page by page, through the same per page locking as
+     * {@link #get(int)}, so that concurrent readers of a page share its load.
+     * Scans are not reported to the {@link MetricsListener}.
+     *
+     * @return an iterator over the list
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new ScanIterator<>(this, currentPageSize);
+    }
+
+    @Override
+    boolean isRangeScan() {
+        return false;
+    }
+
+    @Override
+    List<T> findAvailablePage(int pageIndex, int pageSize) {
+        return findLoadedPage(pageIndex, pageSize);
+    }
+
+    @Override
+    List<T> scanPage(int pageIndex, int pageSize) {
+        List<T> page = findLoadedPage(pageIndex, pageSize);
+        return page != null ? page : loadPage(pageIndex, pageSize);
+    }
+
+    @Override
+    public List<T> subList(int fromIndex, int toIndex) {
+        List<T> subList = new ArrayList<>(toIndex - fromIndex);
+        for (int i = fromIndex; i < toIndex; i++) {
+            subList.add(get(i));
+        }
+        return subList;
+    }
+
+    @Override
+    public List<T> pinnedSubList(int fromIndex, int toIndex) {
+        return Collections.unmodifiableList(subList(fromIndex, toIndex));
+    }
+
+    @Override
+    public synchronized void setPageCache(PageCache<T> pageCache) {
+        generation++;
+        loadedPages.clear();
+        super.setPageCache(pageCache);
+    }
+
+    @Override
+    public synchronized void invalidateRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        // pages being loaded might be stale already
+        generation++;
+        final int pageSize = currentPageSize;
+        for (int page = fromIndex / pageSize; page <= (toIndex - 1) / pageSize; page++) {
+            loadedPages.remove(pageKey(page, pageSize));
+        }
+        super.invalidateRange(fromIndex, toIndex);
+    }
+
+    @Override
+    public synchronized boolean replace(T oldItem, T newItem) {
+        boolean replaced = false;
+        for (Map.Entry<Long, List<T>> entry : loadedPages.entrySet()) {
+            if (entry.getValue().contains(oldItem)) {
+                List<T> copy = new ArrayList<>(entry.getValue());
+                copy.replaceAll(e -> Objects.equals(e, oldItem) ? newItem : e);
+                loadedPages.put(entry.getKey(), copy);
+                invalidateSharedPage(pageIndexOf(entry.getKey()));
+                replaced = true;
+            }
+        }
+        return super.replace(oldItem, newItem) || replaced;
+    }
+
+    @Override
+    public synchronized void reset() {
+        generation++;
+        loadedPages.clear();
+        cachedSize = null;
+        lastRequestedPage = -1;
+        super.reset();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (!isCompactSerialization()) {
+            out.writeObject(new ConcurrentHashMap<>(loadedPages));
+            out.writeObject(cachedSize);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (isCompactSerialization()) {
+            loadedPages = new ConcurrentHashMap<>();
+        } else {
+            loadedPages = (ConcurrentHashMap<Long, List<T>>) in.readObject();
+            cachedSize = (Integer) in.readObject();
+        }
+    }
+
+}
@@ -1,13 +1,35 @@
 package org.vaadin.viritin;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
 import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+import org.vaadin.viritin.cache.ColumnarPage;
+import org.vaadin.viritin.cache.PageCache;
+import org.vaadin.viritin.cache.PageKey;
+import org.vaadin.viritin.cache.SharedPageCache;
+import org.vaadin.viritin.cache.SingleFlight;
 
 /**
  * A general purpose helper class to us MTable/ListContainer for service layers
@@ -21,9 +43,12 @@ import java.util.WeakHashMap;
  */
 public class LazyList<T> extends AbstractList<T> implements Serializable {
 
-    private static final long serialVersionUID = 2423832460602269469L;
+    private static final long serialVersionUID = 6130958128416371054L;
 
     private List<T> findPageFromCache(int pageIndexForReqest) {
+        if (pageCache != null) {
+            return pageCache.get(pageIndexForReqest);
+        }
         int p = pageIndexForReqest - pageIndex;
         if (p < 0) {
             return null;
@@ -34,21 +59,24 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
         return pages.get(p);
     }
 
-    private void loadPreviousPage() {
-        pageIndex--;
-        List<T> page = findEntities(pageIndex * pageSize);
-        pages.add(0, page);
-        if (pages.size() > maxPages) {
-            pages.remove(pages.size() - 1);
+    private void loadPreviousPages(int count) {
+        List<List<T>> loaded = loadPages(pageIndex - count, count);
+        for (int i = loaded.size() - 1; i >= 0; i--) {
+            pageIndex--;
+            pages.add(0, loaded.get(i));
+            if (pages.size() > maxPages) {
+                pages.remove(pages.size() - 1);
+            }
         }
     }
 
-    private void loadNextPage() {
-        List<T> page = findEntities((pageIndex + pages.size()) * pageSize);
-        pages.add(page);
-        if (pages.size() > maxPages) {
-            pages.remove(0);
-            pageIndex++;
+    private void loadNextPages(int count) {
+        for (List<T> page : loadPages(pageIndex + pages.size(), count)) {
+            pages.add(page);
+            if (pages.size() > maxPages) {
+                pages.remove(0);
+                pageIndex++;
+            }
         }
     }
 
@@ -70,6 +98,64 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
         public List<T> findEntities(int firstRow);
     }
 
+    /**
+     * Interface via the LazyList communicates with the "backend", for backends
+     * that can return an arbitrary range of entities. With this, the LazyList
+     * can load several pages with one call, e.g. when the list is accessed a
+     * few pages ahead or a large sub list is requested.
+     *
+     * @param <T> The type of the objects in the list
+     */
+    public interface RangePagingProvider<T> extends Serializable {
+
+        /**
+         * Fetches a range of entities from the backend.
+         *
+         * @param firstRow the index of first row that should be fetched
+         * @param maxResults the maximum number of rows to fetch, a multiple
+         * of the page size configured for the LazyList
+         * @return a sub list from given first index
+         */
+        public List<T> findEntities(int firstRow, int maxResults);
+    }
+
+    /**
+     * A paging provider that supports keyset (aka seek) pagination. Instead of
+     * an offset, the next page is requested with the key of the last entity
+     * on the previous page, e.g. "WHERE id &gt; :lastKey ORDER BY id LIMIT n".
+     * Unlike OFFSET based queries, that is constant time in most databases
+     * regardless of the position and stays stable if rows are inserted while
+     * scrolling.
+     * <p>
+     * LazyList remembers the key at the end of each page it loads and uses
+     * {@link #findEntitiesAfter(Object)} whenever the key for the preceding
+     * page is known, e.g. when scrolling forward. The offset based
+     * {@link #findEntities(int)} is only used for jumps to positions where
+     * the preceding key is not known.
+     *
+     * @param <T> The type of the objects in the list
+     * @param <K> The type of the key the list is ordered by
+     */
+    public interface KeysetPagingProvider<T, K> extends PagingProvider<T> {
+
+        /**
+         * Fetches the "page" of entities that follows the entity with given
+         * key.
+         *
+         * @param lastKey the key of the last entity on the previous page
+         * @return the entities following the given key, as many as the page
+         * size of the LazyList
+         */
+        public List<T> findEntitiesAfter(K lastKey);
+
+        /**
+         * @param entity the entity
+         * @return the key of the given entity, used to fetch the following
+         * page
+         */
+        public K getKey(T entity);
+    }
+
     /**
      * LazyList detects the size of the "simulated" list with via this
      * interface. Backend call is cached as COUNT queries in databases are
@@ -83,6 +169,136 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
         public int size();
     }
 
+    /**
+     * A count provider that can also give a fast estimate of the size, e.g.
+     * based on database statistics. Used while the exact count is being
+     * resolved in the background, see
+     * {@link LazyList#setCountExecutor(java.util.concurrent.Executor)}.
+     */
+    public interface ApproximateCountProvider extends CountProvider {
+
+        /**
+         * @return an estimate of the count of entities listed in the LazyList
+         */
+        public int approximateSize();
+    }
+
+    /**
+     * A listener notified when the exact size of the LazyList has been
+     * resolved in the background.
+     */
+    public interface SizeListener extends Serializable {
+
+        /**
+         * Called when the exact size of the list is known. Note, that this is
+         * called from the thread that executed the count query, so e.g.
+         * Vaadin components must be updated via UI.access.
+         *
+         * @param size the exact size of the list
+         */
+        public void sizeResolved(int size);
+
+        /**
+         * Called when the count query has failed, from the thread that
+         * executed it. The failure is also thrown from the next call to
+         * {@link LazyList#size()}, after which the count is retried.
+         *
+         * @param cause the exception thrown by the count query
+         */
+        public default void sizeFailed(Throwable cause) {
+        }
+    }
+
+    /**
+     * An optional interface via the LazyList can resolve the index of an
+     * entity, if it is not on the pages held in memory. Without it, the
+     * LazyList needs to iterate through the whole list, which fetches every
+     * page from the backend. Typically implemented with a query that counts
+     * the rows preceding the entity in the current sort order.
+     *
+     * @param <T> The type of the objects in the list
+     */
+    public interface IndexProvider<T> extends Serializable {
+
+        /**
+         * @param entity the entity
+         * @return the index of the entity in the list or -1 if it is not in
+         * the list
+         */
+        public int indexOf(T entity);
+    }
+
+    /**
+     * A listener for monitoring how well the caching of a LazyList works, see
+     * {@link LazyListStatistics} for a simple aggregating implementation.
+     * Backend calls may be reported from background threads, if prefetching,
+     * asynchronous counting or streaming is used, so implementations should be
+     * thread safe.
+     */
+    public interface MetricsListener extends Serializable {
+
+        /**
+         * Called when get() finds the requested row from a cached page.
+         *
+         * @param pageIndex the index of the page
+         */
+        public default void cacheHit(int pageIndex) {
+        }
+
+        /**
+         * Called when get() doesn't find the requested row from the cache.
+         *
+         * @param pageIndex the index of the page
+         */
+        public default void cacheMiss(int pageIndex) {
+        }
+
+        /**
+         * Called when the cached pages are dropped because the list is
+         * accessed far from them.
+         *
+         * @param pageIndex the index of the page the cache is restarted from
+         */
+        public default void cacheReset(int pageIndex) {
+        }
+
+        /**
+         * Called after the backend has been called for entities.
+         *
+         * @param rows the number of rows returned
+         * @param durationNanos the duration of the backend call
+         */
+        public default void entitiesFetched(int rows, long durationNanos) {
+        }
+
+        /**
+         * Called after the backend has been called for the size of the list.
+         *
+         * @param durationNanos the duration of the backend call
+         */
+        public default void sizeCounted(long durationNanos) {
+        }
+    }
+
+    /**
+     * Optional interface to stream all entities from the backend, e.g. via a
+     * database cursor, used for full scans of the list. The stream is only
+     * used where it is closed reliably: by {@link LazyList#stream()}, which
+     * the caller must close, e.g. with try-with-resources, and by indexOf and
+     * contains, which close it themselves. {@link LazyList#iterator()} never
+     * opens it, as an Iterator left half way can't be closed.
+     *
+     * @param <T> The type of the objects in the list
+     * @see #setStreamProvider(StreamProvider)
+     */
+    public interface StreamProvider<T> extends Serializable {
+
+        /**
+         * @return all entities in the same order as the list has them
+         */
+        public Stream<T> stream();
+    }
+
     /**
      * Interface via the LazyList communicates with the "backend"
      *
@@ -92,6 +308,7 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
     }
 
     private PagingProvider<T> pageProvider;
+    private RangePagingProvider<T> rangeProvider;
     private final CountProvider countProvider;
 
     // Vaadin table by default has 15 rows, 2x that to cache up an down
@@ -99,15 +316,30 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
     // normal scrolling just 0-1 per user interaction
     public static final int DEFAULT_PAGE_SIZE = 15 + 15 * 2;
 
+    /**
+     * The default number of entities fetched at once in full scans, if a
+     * {@link RangePagingProvider} is used.
+     */
+    public static final int DEFAULT_SCAN_BATCH_SIZE = 1000;
+
+    private int scanBatchSize = DEFAULT_SCAN_BATCH_SIZE;
+    private StreamProvider<T> streamProvider;
+
+    /**
+     * @return the number of entities fetched from the backend at once
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
     public int getMaxPages() {
         return maxPages;
     }
 
     /**
-     * Sets the maximum of pages that are held in memory. By default 3, but it
-     * is adjusted automatically based on requests that are made to the list,
-     * like subList method calls. Most often this shouldn't be called by end
-     * user.
+     * Sets the maximum of pages that are held in memory. By default 3. Pages
+     * needed by sub lists are held by the sub lists themselves and don't count
+     * to this limit. Not used if a {@link PageCache} is configured.
      *
      * @param maxPages the number of pages to be held in memory
      */
@@ -117,10 +349,31 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
 
     private int maxPages = 3;
 
-    List<List<T>> pages = new ArrayList<>();
+    // serialized in writeObject, unless compact serialization is used
+    transient List<List<T>> pages = new ArrayList<>();
 
     private int pageIndex = -10;
-    private final int pageSize;
+    private int pageSize;
+
+    private AdaptivePageSize adaptivePageSize;
+    // measures the latency of backend calls, replaced in tests
+    private transient LongSupplier nanoClock;
+
+    private PageCache<T> pageCache;
+
+    private transient MetricsListener metricsListener;
+
+    private transient SharedPageCache sharedPageCache;
+    private transient SingleFlight<PageKey, List<?>> singleFlight;
+    private Object queryId;
+
+    private transient Map<Integer, Object> pageEndKeys;
+
+    private transient Executor prefetchExecutor;
+    private transient Map<Integer, Future<List<T>>> prefetchedPages;
+    private int lastRequestedPage = -1;
+    private boolean compactSerialization;
+    private int prefetchDepth = 1;
 
     protected LazyList(CountProvider countProvider, int pageSize) {
         this.countProvider = countProvider;
@@ -178,26 +431,53 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
         this.pageSize = pageSize;
     }
 
+    /**
+     * Constructs a new LazyList with given providers and page size. The range
+     * provider makes it possible to load several pages with one backend call.
+     *
+     * @param rangeProvider the interface via ranges of entities are requested
+     * @param countProvider the interface via the total count of entities is
+     * detected.
+     * @param pageSize the page size that should be used
+     */
+    public LazyList(RangePagingProvider<T> rangeProvider, CountProvider countProvider, int pageSize) {
+        this.rangeProvider = rangeProvider;
+        this.countProvider = countProvider;
+        this.pageSize = pageSize;
+    }
+
     @Override
     public T get(final int index) {
+        if (adaptivePageSize != null) {
+            recordAccess(index);
+        }
         final int pageIndexForReqest = index / pageSize;
         final int indexOnPage = index % pageSize;
 
         // Find page from cache
         List<T> page = findPageFromCache(pageIndexForReqest);
+        if (metricsListener != null) {
+            if (page != null) {
+                metricsListener.cacheHit(pageIndexForReqest);
+            } else {
+                metricsListener.cacheMiss(pageIndexForReqest);
+            }
+        }
 
         if (page == null) {
-            if (pageIndex >= 0) {
+            if (pageCache != null) {
+                page = loadPage(pageIndexForReqest);
+                pageCache.put(pageIndexForReqest, page);
+            } else if (isPageInWindow(pageIndexForReqest)) {
+                // invalidated page inside the window, reload in place
+                pages.set(pageIndexForReqest - pageIndex, loadPage(pageIndexForReqest));
+            } else if (pageIndex >= 0) {
                 if (pageIndexForReqest > pageIndex && pageIndexForReqest < pageIndex + pages.size() + maxPages) {
                     // load next n pages forward
-                    while (pageIndexForReqest >= pageIndex + pages.size()) {
-                        loadNextPage();
-                    }
+                    loadNextPages(pageIndexForReqest - pageIndex - pages.size() + 1);
                 } else if (pageIndexForReqest < pageIndex && pageIndexForReqest > pageIndex - maxPages) {
                     //load prev page to cache
-                    while (pageIndexForReqest < pageIndex) {
-                        loadPreviousPage();
-                    }
+                    loadPreviousPages(pageIndex - pageIndexForReqest);
                 } else {
                     initCacheFormPage(pageIndexForReqest);
                 }
@@ -205,133 +485,1416 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
                 // first page to load
                 initCacheFormPage(pageIndexForReqest);
             }
-            page = findPageFromCache(pageIndexForReqest);
+            if (pageCache == null) {
+                page = findPageFromCache(pageIndexForReqest);
+            }
+        }
+
+        if (prefetchExecutor != null && pageIndexForReqest != lastRequestedPage) {
+            prefetch(pageIndexForReqest);
         }
 
-        return page != null ? page.get(indexOnPage) : null;
+        if (page == null || indexOnPage >= page.size() && cachedSize == null
+                && countExecutor != null) {
+            // beyond the end of the list while the size is estimated
+            return null;
+        }
+        return page.get(indexOnPage);
     }
 
     protected void initCacheFormPage(final int pageIndexForReqest) {
+        if (metricsListener != null && !pages.isEmpty()) {
+            metricsListener.cacheReset(pageIndexForReqest);
+        }
         // clear cache
         pageIndex = pageIndexForReqest;
         pages.clear();
-        pages.add(findEntities(pageIndex * pageSize));
+        pages.add(loadPage(pageIndex));
     }
 
-    protected List<T> findEntities(int i) {
-        return pageProvider.findEntities(i);
+    /**
+     * Returns the given page, either from a pending prefetch or by calling the
+     * backend directly.
+     *
+     * @param page the index of the page
+     * @return the entities on the page
+     */
+    private List<T> loadPage(int page) {
+        List<T> entities = null;
+        if (prefetchedPages != null) {
+            Future<List<T>> prefetched = prefetchedPages.remove(page);
+            if (prefetched != null) {
+                try {
+                    // blocks only if the background fetch is still running
+                    entities = prefetched.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // fall back to fetching the page on this thread
+                }
+            }
+        }
+        if (entities == null) {
+            final long start = nanoTime();
+            entities = fetchPage(page);
+            recordFetch(start);
+        }
+        indexPage(page, entities);
+        return entities;
+    }
+
+    /**
+     * Replaces the clock used to measure the latency of backend calls, so
+     * that tests don't depend on real time.
+     *
+     * @param nanoClock returns the current time in nanoseconds, null to use
+     * {@link System#nanoTime()}
+     */
+    void setNanoClock(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
     }
 
-    private Integer cachedSize;
+    long nanoTime() {
+        final LongSupplier clock = nanoClock;
+        return clock != null ? clock.getAsLong() : System.nanoTime();
+    }
 
-    @Override
-    public int size() {
-        if (cachedSize == null) {
-            cachedSize = countProvider.size();
+    void recordAccess(int index) {
+        final AdaptivePageSize adaptive = adaptivePageSize;
+        if (adaptive != null && adaptive.recordAccess(index)) {
+            adjustPageSize(adaptive);
         }
-        return cachedSize;
     }
 
-    private transient WeakHashMap<T, Integer> indexCache;
+    void recordFetch(long startNanos) {
+        final AdaptivePageSize adaptive = adaptivePageSize;
+        if (adaptive != null) {
+            adaptive.recordFetch((nanoTime() - startNanos) / 1000000.0);
+        }
+    }
 
-    private Map<T, Integer> getIndexCache() {
-        if (indexCache == null) {
-            indexCache = new WeakHashMap<>();
+    private void adjustPageSize(AdaptivePageSize adaptive) {
+        final int newPageSize = adaptive.adjust(pageSize);
+        prefetchDepth = adaptive.getPrefetchDepth();
+        if (newPageSize != pageSize) {
+            pageSize = newPageSize;
+            // cached pages are aligned to the old page size
+            pages.clear();
+            pageIndex = -10;
+            if (pageCache != null) {
+                pageCache.clear();
+            }
+            if (prefetchedPages != null) {
+                prefetchedPages.clear();
+            }
+            if (pageEndKeys != null) {
+                pageEndKeys.clear();
+            }
+            lastRequestedPage = -1;
+            pageSizeChanged();
         }
-        return indexCache;
     }
 
-    @Override
-    public int indexOf(Object o) {
-        // optimize: check the buffers first
-        Integer indexViaCache = getIndexCache().get(o);
-        if (indexViaCache != null) {
-            return indexViaCache;
+    /**
+     * Called when the page size has been adjusted and the cached pages have
+     * been dropped, for subclasses that keep pages of their own.
+     */
+    void pageSizeChanged() {
+    }
+
+    /**
+     * Makes the list tune its page size at runtime, between the given bounds.
+     * The list measures the latency of the backend calls, how many rows of
+     * the fetched data are actually used and how far apart the accessed rows
+     * are. Slow backends that are scrolled through get larger pages (and
+     * deeper prefetching, if enabled), fast backends and random access get
+     * smaller pages. Cached pages are dropped when the page size changes.
+     * <p>
+     * As the page size varies, this requires the list to be created with a
+     * {@link RangePagingProvider}.
+     *
+     * @param minPageSize the smallest page size to use
+     * @param maxPageSize the largest page size to use
+     */
+    public void setAdaptivePageSize(int minPageSize, int maxPageSize) {
+        if (rangeProvider == null) {
+            throw new IllegalStateException("Adaptive page size requires a RangePagingProvider");
         }
-        for (int i = 0; i < pages.size(); i++) {
-            List<T> page = pages.get(i);
-            int indexOf = page.indexOf(o);
-            if (indexOf != -1) {
-                indexViaCache = (pageIndex + i) * pageSize + indexOf;
-            }
+        if (minPageSize < 1 || maxPageSize < minPageSize) {
+            throw new IllegalArgumentException("Invalid page size bounds");
         }
-        if (indexViaCache != null) {
-            /*
-             * In some cases (selected value) components like Vaadin combobox calls this, then stuff from elsewhere with indexes and
-             * finally again this method with the same object (possibly on other page). Thus, to avoid heavy iterating,
-             * cache the location.
-             */
-            getIndexCache().put((T) o, indexViaCache);
-            return indexViaCache;
+        adaptivePageSize = new AdaptivePageSize(minPageSize, maxPageSize);
+    }
+
+    /**
+     * Stops adjusting the page size, the current page size is kept.
+     */
+    public void disableAdaptivePageSize() {
+        adaptivePageSize = null;
+    }
+
+    /**
+     * @return true if the page size is tuned at runtime
+     * @see #setAdaptivePageSize(int, int)
+     */
+    public boolean isAdaptivePageSize() {
+        return adaptivePageSize != null;
+    }
+
+    /**
+     * Loads the given pages. If a {@link RangePagingProvider} is available,
+     * adjacent pages that are neither in the shared page cache nor being
+     * prefetched are loaded with a single backend call.
+     *
+     * @param firstPage the index of the first page to load
+     * @param count the number of pages to load
+     * @return the loaded pages
+     */
+    private List<List<T>> loadPages(int firstPage, int count) {
+        List<List<T>> loaded = new ArrayList<>(count);
+        final int end = firstPage + count;
+        int page = firstPage;
+        while (page < end) {
+            int runEnd = page + 1;
+            if (rangeProvider != null && isMissing(page)) {
+                while (runEnd < end && isMissing(runEnd)) {
+                    runEnd++;
+                }
+            }
+            if (runEnd - page == 1) {
+                loaded.add(loadPage(page));
+            } else {
+                loaded.addAll(loadRange(page, runEnd - page));
+            }
+            page = runEnd;
         }
-        // fall back to iterating, this will most likely be sloooooow....
-        // If your app gets here, consider overwriting this method, and to
-        // some optimization at service/db level
-        return super.indexOf(o);
+        return loaded;
     }
 
-    @Override
-    public boolean contains(Object o) {
-        // Although there would be the indexed version, vaadin sometimes calls this
-        // First check caches, then fall back to sluggish iterator :-(
-        if (getIndexCache().containsKey(o)) {
-            return true;
+    /**
+     * @param page the index of a page
+     * @return true if the page is neither in the shared page cache nor being
+     * prefetched
+     */
+    private boolean isMissing(int page) {
+        if (prefetchedPages != null && prefetchedPages.containsKey(page)) {
+            return false;
         }
-        for (List<T> t : pages) {
-            if (t.contains(o)) {
-                return true;
+        return sharedPageCache == null
+                || sharedPageCache.get(new PageKey(queryId, getSortKey(), page, pageSize)) == null;
+    }
+
+    /**
+     * Loads adjacent pages with one call of the {@link RangePagingProvider},
+     * merged with identical concurrent calls if a single flight layer is
+     * configured. The pages are offered to the shared page cache.
+     *
+     * @param firstPage the index of the first page to load
+     * @param count the number of pages to load
+     * @return the loaded pages
+     */
+    private List<List<T>> loadRange(int firstPage, int count) {
+        List<List<T>> loaded = new ArrayList<>(count);
+        final SharedPageCache shared = sharedPageCache;
+        final long generation = shared != null ? shared.getGeneration() : 0;
+        final long start = nanoTime();
+        List<T> rows = fetchRange(firstPage * pageSize, count * pageSize);
+        recordFetch(start);
+        for (int i = 0; i < count; i++) {
+            // copied, so that pages can be evicted independently
+            final int from = Math.min(i * pageSize, rows.size());
+            final int to = Math.min((i + 1) * pageSize, rows.size());
+            List<T> page = rows instanceof ColumnarPage
+                    ? ((ColumnarPage<T>) rows).copyOfRange(from, to)
+                    : new ArrayList<>(rows.subList(from, to));
+            if (shared != null) {
+                page = shared.put(new PageKey(queryId, getSortKey(), firstPage + i, pageSize), page, generation);
             }
+            indexPage(firstPage + i, page);
+            loaded.add(page);
         }
-        return super.contains(o);
+        return loaded;
     }
 
-    @Override
-    public List<T> subList(int fromIndex, int toIndex) {
-        final int sizeOfSublist = toIndex - fromIndex;
-        if (sizeOfSublist > maxPages * (pageSize -1)) {
-            // Increase the amount of cached pages if necessary
-            maxPages = sizeOfSublist/pageSize + 1;
+    /**
+     * Fetches a range of rows with the {@link RangePagingProvider}, via the
+     * single flight layer if configured.
+     *
+     * @param firstRow the index of the first row
+     * @param maxResults the number of rows to fetch
+     * @return the rows
+     */
+    @SuppressWarnings("unchecked")
+    List<T> fetchRange(int firstRow, int maxResults) {
+        final SingleFlight<PageKey, List<?>> flight = singleFlight;
+        if (flight == null) {
+            return findRange(firstRow, maxResults);
         }
-        return new ArrayList<>(super.subList(fromIndex, toIndex));
+        return (List<T>) flight.execute(PageKey.ofRange(queryId, getSortKey(), firstRow, maxResults),
+                () -> findRange(firstRow, maxResults));
     }
 
-    @Override
-    public Iterator<T> iterator() {
-        return new Iterator<T>() {
+    private List<T> findRange(int firstRow, int maxResults) {
+        final long start = nanoTime();
+        List<T> rows = rangeProvider.findEntities(firstRow, maxResults);
+        if (metricsListener != null) {
+            metricsListener.entitiesFetched(rows.size(), nanoTime() - start);
+        }
+        return rows;
+    }
 
-            private int index = -1;
-            private final int size = size();
+    /**
+     * Fetches the given page via the shared page cache and single flight
+     * layer, if configured, or directly from the backend. May be called from a
+     * background thread.
+     *
+     * @param page the index of the page
+     * @return the entities on the page
+     */
+    List<T> fetchPage(int page) {
+        return fetchPage(page, pageSize);
+    }
 
-            @Override
-            public boolean hasNext() {
-                return index + 1 < size;
+    /**
+     * Fetches the given page like {@link #fetchPage(int)}, with the given
+     * page size, so that the page stays consistent with the caller if the
+     * page size is adjusted meanwhile.
+     *
+     * @param page the index of the page
+     * @param pageSize the page size
+     * @return the entities on the page
+     */
+    @SuppressWarnings("unchecked")
+    List<T> fetchPage(int page, int pageSize) {
+        final SharedPageCache shared = sharedPageCache;
+        final SingleFlight<PageKey, List<?>> flight = singleFlight;
+        if (shared == null && flight == null) {
+            return findPage(page, pageSize);
+        }
+        final PageKey key = new PageKey(queryId, getSortKey(), page, pageSize);
+        if (shared != null) {
+            List<T> cached = (List<T>) shared.get(key);
+            if (cached != null) {
+                return cached;
             }
-
-            @Override
-            public T next() {
-                if (!hasNext()) throw new NoSuchElementException();
-
-                index++;
-                return get(index);
+            if (flight == null) {
+                final long generation = shared.getGeneration();
+                return shared.put(key, findPage(page, pageSize), generation);
             }
+            return (List<T>) flight.execute(key, () -> {
+                // a call that just completed may have stored it
+                List<?> stored = shared.get(key);
+                if (stored != null) {
+                    return stored;
+                }
+                final long generation = shared.getGeneration();
+                return shared.put(key, findPage(page, pageSize), generation);
+            });
+        }
+        return (List<T>) flight.execute(key, () -> {
+            List<T> entities = findPage(page, pageSize);
+            // columnar pages are read-only already
+            return entities instanceof ColumnarPage ? entities
+                    : Collections.unmodifiableList(entities);
+        });
+    }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException("Not supported.");
-            }
-        };
+    /**
+     * Calls the backend for the given page, using keyset pagination if the
+     * provider supports it and the key preceding the page is known.
+     *
+     * @param page the index of the page
+     * @param pageSize the page size
+     * @return the entities on the page
+     */
+    private List<T> findPage(int page, int pageSize) {
+        final MetricsListener metrics = metricsListener;
+        if (metrics == null) {
+            return findPageFromBackend(page, pageSize);
+        }
+        final long start = nanoTime();
+        List<T> entities = findPageFromBackend(page, pageSize);
+        metrics.entitiesFetched(entities.size(), nanoTime() - start);
+        return entities;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> findPageFromBackend(int page, int pageSize) {
+        if (rangeProvider != null && pageSize != this.pageSize) {
+            // the page size has been adjusted after the caller computed it
+            return rangeProvider.findEntities(page * pageSize, pageSize);
+        }
+        if (!(pageProvider instanceof KeysetPagingProvider)) {
+            return findEntities(page * pageSize);
+        }
+        KeysetPagingProvider<T, Object> keysetProvider = (KeysetPagingProvider<T, Object>) pageProvider;
+        Map<Integer, Object> endKeys = getPageEndKeys();
+        Object previousKey = page > 0 ? endKeys.get(page - 1) : null;
+        List<T> entities = previousKey != null
+                ? keysetProvider.findEntitiesAfter(previousKey)
+                : findEntities(page * pageSize);
+        if (!entities.isEmpty()) {
+            endKeys.put(page, keysetProvider.getKey(entities.get(entities.size() - 1)));
+            trimPageEndKeys(endKeys, page);
+        }
+        return entities;
     }
 
     /**
-     * Resets buffers used by the LazyList.
+     * Drops the keys of pages far from the given one, so that keys don't pile
+     * up when the list is scrolled through. A page far away is fetched with an
+     * offset, after which keys are used again.
+     *
+     * @param endKeys the keys at the end of the pages
+     * @param page the page that was just loaded
      */
-    public void reset() {
-        pages.clear();
-        pageIndex = -10;
-        cachedSize = null;
+    private void trimPageEndKeys(Map<Integer, Object> endKeys, int page) {
+        final int radius = maxPages + prefetchDepth;
+        if (endKeys.size() > 2 * radius) {
+            endKeys.keySet().removeIf(p -> Math.abs(p - page) > radius);
+        }
+    }
+
+    private synchronized Map<Integer, Object> getPageEndKeys() {
+        // may be accessed by prefetching threads
+        if (pageEndKeys == null) {
+            pageEndKeys = new ConcurrentHashMap<>();
+        }
+        return pageEndKeys;
+    }
+
+    /**
+     * Returns a value identifying the current sort order of the list, used as
+     * part of the key in the shared page cache. Subclasses that support
+     * sorting must override this.
+     *
+     * @return a value identifying the sort order, with proper equals and
+     * hashCode, or null if the list is in natural order
+     */
+    protected Object getSortKey() {
+        return null;
+    }
+
+    /**
+     * @return the single flight layer used by this list, or null if not used
+     */
+    public SingleFlight<PageKey, List<?>> getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Configures the list to merge its backend calls with identical
+     * concurrent calls of other lists sharing the same single flight layer.
+     * If another list (e.g. in another session) is already fetching the same
+     * page of the same query, this list waits for that call and uses its
+     * result. Combined with a shared page cache, this prevents the backend
+     * from being called N times when many users request a page right after
+     * the cache has been invalidated.
+     * <p>
+     * The query identity must cover everything that affects the results,
+     * like with {@link #setSharedPageCache(SharedPageCache, Object)}. Fetched
+     * pages are shared and thus unmodifiable. The layer is not serialized
+     * with the list.
+     *
+     * @param singleFlight the application scoped single flight layer, null to
+     * disable
+     * @param queryId the identity of the query, must implement equals and
+     * hashCode
+     */
+    public void setSingleFlight(SingleFlight<PageKey, List<?>> singleFlight, Object queryId) {
+        if (singleFlight != null && queryId == null) {
+            throw new IllegalArgumentException("queryId is required with single flight");
+        }
+        this.singleFlight = singleFlight;
+        this.queryId = queryId;
+    }
+
+    /**
+     * @return the shared page cache used by this list, or null if not used
+     */
+    public SharedPageCache getSharedPageCache() {
+        return sharedPageCache;
+    }
+
+    /**
+     * @return the identity of the query this list shows in the shared page
+     * cache
+     */
+    public Object getQueryId() {
+        return queryId;
+    }
+
+    /**
+     * Configures the list to consult an application scoped page cache before
+     * calling the backend. Lists with the same query identity (and sort order
+     * and page size) share the cached pages, so e.g. a catalogue browsed by
+     * hundreds of users is fetched only once.
+     * <p>
+     * The query identity must cover everything that affects the results,
+     * including filters and possible user specific restrictions, otherwise
+     * users may see each others data. The shared cache is not serialized with
+     * the list, it needs to be configured again after deserialization.
+     *
+     * @param sharedPageCache the application scoped cache, null to disable
+     * @param queryId the identity of the query, must implement equals and
+     * hashCode
+     */
+    public void setSharedPageCache(SharedPageCache sharedPageCache, Object queryId) {
+        if (sharedPageCache != null && queryId == null) {
+            throw new IllegalArgumentException("queryId is required with a shared page cache");
+        }
+        this.sharedPageCache = sharedPageCache;
+        this.queryId = queryId;
+    }
+
+    /**
+     * Starts fetching the page next to the requested one in the direction the
+     * list is being accessed, so that it is most likely available by the time
+     * it is needed.
+     *
+     * @param requestedPage the page that was just accessed
+     */
+    private void prefetch(final int requestedPage) {
+        final int direction = requestedPage < lastRequestedPage ? -1 : 1;
+        lastRequestedPage = requestedPage;
+        if (prefetchedPages == null) {
+            prefetchedPages = new HashMap<>();
+        }
+        // results of prefetches to other direction are most likely useless
+        prefetchedPages.keySet().removeIf(p -> Math.abs(p - requestedPage) > prefetchDepth);
+        for (int i = 1; i <= prefetchDepth; i++) {
+            final int page = requestedPage + i * direction;
+            if (page < 0 || cachedSize != null && page * pageSize >= cachedSize) {
+                return;
+            }
+            if (isPageCached(page) || prefetchedPages.containsKey(page)) {
+                continue;
+            }
+            FutureTask<List<T>> task = new FutureTask<>(() -> fetchPage(page));
+            prefetchedPages.put(page, task);
+            prefetchExecutor.execute(task);
+        }
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Sets how many pages ahead are prefetched, if prefetching is enabled. By
+     * default 1. With adaptive page size, the depth is adjusted automatically
+     * based on the latency of the backend.
+     *
+     * @param prefetchDepth the number of pages to prefetch
+     * @see #setPrefetchExecutor(java.util.concurrent.Executor)
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    private boolean isPageCached(int page) {
+        if (pageCache != null) {
+            return pageCache.containsPage(page);
+        }
+        return isPageInWindow(page) && pages.get(page - pageIndex) != null;
+    }
+
+    private boolean isPageInWindow(int page) {
+        return page >= pageIndex && page < pageIndex + pages.size();
+    }
+
+    /**
+     * @return the page cache used instead of the default sliding window, null
+     * if the default is used
+     */
+    public PageCache<T> getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Sets a page cache to be used instead of the default sliding window of
+     * pages. By default the LazyList keeps a contiguous window of
+     * {@link #getMaxPages()} pages and drops it completely when the list is
+     * accessed far outside of it. With a page cache, pages are cached
+     * independently of each other and the cache implementation decides which
+     * ones to evict, e.g. {@link org.vaadin.viritin.cache.LruPageCache}. This
+     * helps with access patterns that jump between distant positions in the
+     * list.
+     *
+     * @param pageCache the page cache to use, null to use the default sliding
+     * window
+     */
+    public void setPageCache(PageCache<T> pageCache) {
+        this.pageCache = pageCache;
+        pages.clear();
+        pageIndex = -10;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets a listener that is notified about cache hits and misses and the
+     * backend calls made by the list. Useful to tune e.g. the page size and
+     * the number of cached pages in production. The listener is typically
+     * shared by many lists, so it is not serialized with the list, it needs to
+     * be set again after deserialization.
+     *
+     * @param metricsListener the listener, e.g. {@link LazyListStatistics},
+     * null to disable
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * @return the executor used to prefetch pages, null if prefetching is not
+     * used
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * Enables read-ahead prefetching of pages. When set, the LazyList follows
+     * the direction in which it is accessed and fetches the next (or previous)
+     * page on the given executor, while the current page is being used.
+     * Prefetched pages are taken into use when they are first needed, so the
+     * LazyList itself is still to be used from one thread at a time.
+     * <p>
+     * Note, that the backend is called from the threads of the given executor,
+     * so it must not depend on e.g. thread local state. The executor is not
+     * serialized with the list. {@link org.vaadin.viritin.util.BackendExecutors}
+     * provides executors that use virtual threads when available.
+     *
+     * @param prefetchExecutor the executor used to fetch pages in the
+     * background, null to disable prefetching (the default)
+     */
+    public void setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+        if (prefetchExecutor == null && prefetchedPages != null) {
+            prefetchedPages.clear();
+        }
+    }
+
+    protected List<T> findEntities(int i) {
+        if (rangeProvider != null) {
+            return rangeProvider.findEntities(i, pageSize);
+        }
+        return pageProvider.findEntities(i);
+    }
+
+    private transient Integer cachedSize;
+
+    private transient Executor countExecutor;
+    private transient volatile FutureTask<Integer> pendingCount;
+    private volatile int countGeneration;
+    private final List<SizeListener> sizeListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public int size() {
+        if (cachedSize == null) {
+            if (countExecutor != null) {
+                return sizeAsynchronously();
+            }
+            cachedSize = count();
+        }
+        return cachedSize;
+    }
+
+    private int count() {
+        final MetricsListener metrics = metricsListener;
+        if (metrics == null) {
+            return countProvider.size();
+        }
+        final long start = nanoTime();
+        int count = countProvider.size();
+        metrics.sizeCounted(nanoTime() - start);
+        return count;
+    }
+
+    private int sizeAsynchronously() {
+        FutureTask<Integer> count = pendingCount;
+        if (count == null) {
+            final int generation = ++countGeneration;
+            count = new FutureTask<Integer>(this::count) {
+                @Override
+                protected void done() {
+                    // the list may have been reset while counting, but not
+                    // if size() has already picked up the result
+                    if (generation == countGeneration && !isCancelled()) {
+                        fireSizeEvent(this);
+                    }
+                }
+            };
+            pendingCount = count;
+            countExecutor.execute(count);
+        }
+        if (count.isDone()) {
+            pendingCount = null;
+            try {
+                cachedSize = count.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return estimateSize();
+            } catch (ExecutionException e) {
+                // reported to the caller, the next call counts again
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+            return cachedSize;
+        }
+        return estimateSize();
+    }
+
+    private void fireSizeEvent(FutureTask<Integer> count) {
+        try {
+            int size = count.get();
+            for (SizeListener listener : sizeListeners) {
+                listener.sizeResolved(size);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            for (SizeListener listener : sizeListeners) {
+                listener.sizeFailed(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Estimates the size of the list while the exact count is not yet known.
+     * Uses the {@link ApproximateCountProvider} if available, otherwise the
+     * rows known so far, plus one page if the last known page was full.
+     *
+     * @return the estimated size
+     */
+    private int estimateSize() {
+        if (countProvider instanceof ApproximateCountProvider) {
+            return ((ApproximateCountProvider) countProvider).approximateSize();
+        }
+        int known = estimateSizeFromPages();
+        return known > 0 ? known : pageSize;
+    }
+
+    /**
+     * @return the number of rows known from the loaded pages, plus one page
+     * if the last known page was full, 0 if no pages are loaded
+     */
+    int estimateSizeFromPages() {
+        int[] known = new int[1];
+        if (pageCache != null) {
+            pageCache.forEachPage((i, page) -> known[0] = Math.max(known[0],
+                    estimateSize(i, page)));
+        } else if (!pages.isEmpty()) {
+            int last = pages.size() - 1;
+            if (pages.get(last) != null) {
+                known[0] = estimateSize(pageIndex + last, pages.get(last));
+            }
+        }
+        return known[0];
+    }
+
+    int estimateSize(int pageIndex, List<T> page) {
+        int rows = pageIndex * pageSize + page.size();
+        return page.size() < pageSize ? rows : rows + pageSize;
+    }
+
+    /**
+     * @return true if the exact size of the list is known, false if it is
+     * not yet resolved or only estimated
+     */
+    public boolean isSizeKnown() {
+        return cachedSize != null;
+    }
+
+    /**
+     * @return the executor used to resolve the size of the list, or null if
+     * the size is resolved synchronously
+     */
+    public Executor getCountExecutor() {
+        return countExecutor;
+    }
+
+    /**
+     * Makes the LazyList resolve its size asynchronously with the given
+     * executor. Until the count query completes, {@link #size()} returns an
+     * estimate, so that e.g. the first rows of a table can be rendered without
+     * waiting for a slow COUNT query. The estimate is taken from an
+     * {@link ApproximateCountProvider}, if the count provider implements it,
+     * or from the pages loaded so far. Register a {@link SizeListener} to get
+     * notified when the exact size is available, e.g. to call
+     * ListContainer.fireItemSetChange() via UI.access. If the count query
+     * fails, the failure is thrown from the next call to size(), which then
+     * starts a new count.
+     * <p>
+     * While the size is estimated, get() returns null for indexes beyond the
+     * actual end of the list. The executor is not serialized with the list,
+     * see {@link org.vaadin.viritin.util.BackendExecutors} for a shared one.
+     *
+     * @param countExecutor the executor to run the count query with, null to
+     * count synchronously (the default)
+     */
+    public void setCountExecutor(Executor countExecutor) {
+        this.countExecutor = countExecutor;
+    }
+
+    /**
+     * Adds a listener notified when the size of the list has been resolved
+     * asynchronously.
+     *
+     * @param listener the listener
+     * @see #setCountExecutor(java.util.concurrent.Executor)
+     */
+    public void addSizeListener(SizeListener listener) {
+        sizeListeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeSizeListener(SizeListener listener) {
+        sizeListeners.remove(listener);
+    }
+
+    /**
+     * The default maximum number of entity indexes remembered by the list,
+     * 0 meaning that only the results of indexOf calls are remembered.
+     */
+    public static final int DEFAULT_INDEX_CACHE_SIZE = 0;
+
+    private int indexCacheSize = DEFAULT_INDEX_CACHE_SIZE;
+    private transient Map<Object, Integer> indexCache;
+    private IndexProvider<T> indexProvider;
+
+    Map<Object, Integer> getIndexCache() {
+        if (indexCache == null) {
+            indexCache = createIndexCache();
+        }
+        return indexCache;
+    }
+
+    /**
+     * @return a new map for remembering the indexes of entities
+     */
+    Map<Object, Integer> createIndexCache() {
+        if (indexCacheSize == 0) {
+            // results of lookups, e.g. the selected value, as long as
+            // they are referenced elsewhere
+            return new WeakHashMap<>();
+        }
+        return new LinkedHashMap<Object, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Integer> eldest) {
+                return size() > indexCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Remembers the indexes of the entities on a freshly loaded page. Columnar
+     * pages are skipped, as that would materialize all of their rows.
+     *
+     * @param page the index of the page
+     * @param entities the entities on the page
+     */
+    private void indexPage(int page, List<T> entities) {
+        if (indexCacheSize == 0 || entities instanceof ColumnarPage) {
+            return;
+        }
+        Map<Object, Integer> cache = getIndexCache();
+        int firstRow = page * pageSize;
+        // only the tail fits to the cache
+        for (int i = Math.max(0, entities.size() - indexCacheSize); i < entities.size(); i++) {
+            cache.put(entities.get(i), firstRow + i);
+        }
+    }
+
+    public int getIndexCacheSize() {
+        return indexCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of entity indexes the list remembers. By default
+     * (0), only the results of indexOf calls are remembered, and only as long
+     * as the entities are referenced elsewhere. With a positive size, the
+     * indexes of the entities on loaded pages are remembered too, also after
+     * the pages themselves have been evicted, so that e.g. the index of a
+     * selected row can be resolved without scanning the list. Note that the
+     * list then holds up to the given number of entities in memory, in
+     * addition to its pages. Least recently used indexes are dropped first.
+     *
+     * @param indexCacheSize the maximum number of remembered indexes, 0 to
+     * remember only the results of lookups
+     */
+    public void setIndexCacheSize(int indexCacheSize) {
+        if (indexCacheSize < 0) {
+            throw new IllegalArgumentException("Index cache size must not be negative");
+        }
+        this.indexCacheSize = indexCacheSize;
+        indexCache = null;
+    }
+
+    public IndexProvider<T> getIndexProvider() {
+        return indexProvider;
+    }
+
+    /**
+     * Sets a provider that resolves the index of an entity from the backend,
+     * used if the entity is not found from the memory. Without it, indexOf and
+     * contains fall back to iterating through the whole list.
+     *
+     * @param indexProvider the index provider, null to iterate (the default)
+     */
+    public void setIndexProvider(IndexProvider<T> indexProvider) {
+        this.indexProvider = indexProvider;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        // optimize: check the buffers first
+        Integer indexViaCache = getIndexCache().get(o);
+        if (indexViaCache != null) {
+            return indexViaCache;
+        }
+        indexViaCache = findIndexFromCachedPages(o);
+        if (indexViaCache == null) {
+            indexViaCache = findIndexFromBackend(o);
+        }
+        if (indexViaCache != null) {
+            /*
+             * In some cases (selected value) components like Vaadin combobox calls this, then stuff from elsewhere with indexes and
+             * finally again this method with the same object (possibly on other page). Thus, to avoid heavy iterating,
+             * cache the location.
+             */
+            if (indexViaCache >= 0) {
+                getIndexCache().put(o, indexViaCache);
+            }
+            return indexViaCache;
+        }
+        // fall back to iterating, this will most likely be sloooooow....
+        // If your app gets here, consider setting an IndexProvider or
+        // overwriting this method, and to some optimization at service/db level
+        int scanned = scanIndexOf(o);
+        if (scanned >= 0) {
+            getIndexCache().put(o, scanned);
+        }
+        return scanned;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Integer findIndexFromBackend(Object o) {
+        if (indexProvider == null) {
+            return null;
+        }
+        try {
+            return indexProvider.indexOf((T) o);
+        } catch (ClassCastException e) {
+            // not an entity of this list
+            return -1;
+        }
+    }
+
+    /**
+     * @param o the entity to look for
+     * @return the index of the entity on the pages in memory, null if not
+     * found
+     */
+    Integer findIndexFromCachedPages(Object o) {
+        if (pageCache != null) {
+            Integer[] found = new Integer[1];
+            pageCache.forEachPage((i, page) -> {
+                int indexOf = page.indexOf(o);
+                if (indexOf != -1) {
+                    found[0] = i * pageSize + indexOf;
+                }
+            });
+            return found[0];
+        }
+        Integer found = null;
+        for (int i = 0; i < pages.size(); i++) {
+            List<T> page = pages.get(i);
+            if (page == null) {
+                continue;
+            }
+            int indexOf = page.indexOf(o);
+            if (indexOf != -1) {
+                found = (pageIndex + i) * pageSize + indexOf;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks the remembered indexes and the pages in memory first, then asks
+     * the {@link IndexProvider} if set. Otherwise the list is scanned like in
+     * {@link #iterator()}.
+     *
+     * @param o the entity to look for
+     * @return true if the list contains the entity
+     */
+    @Override
+    public boolean contains(Object o) {
+        // Although there would be the indexed version, vaadin sometimes calls this
+        // First check caches, then fall back to sluggish iterator :-(
+        if (getIndexCache().containsKey(o)) {
+            return true;
+        }
+        if (findIndexFromCachedPages(o) != null) {
+            return true;
+        }
+        if (indexProvider != null) {
+            return indexOf(o) >= 0;
+        }
+        // closes the stream of a StreamProvider, unlike super.contains
+        return scanIndexOf(o) >= 0;
+    }
+
+    /**
+     * Returns a copy of the given range of the list. Missing pages are loaded
+     * with a single backend call if a {@link RangePagingProvider} is used, and
+     * the page cache doesn't grow to hold the whole range.
+     *
+     * @param fromIndex low endpoint (inclusive) of the subList
+     * @param toIndex high endpoint (exclusive) of the subList
+     * @return a copy of the specified range within this list
+     * @see #pinnedSubList(int, int)
+     */
+    @Override
+    public List<T> subList(int fromIndex, int toIndex) {
+        return new ArrayList<>(pinnedSubList(fromIndex, toIndex));
+    }
+
+    /**
+     * Returns a view to the given range of the list. Unlike
+     * {@link #subList(int, int)}, the entities are not copied: the view refers
+     * directly to the pages covering the range, which stay in memory as long as
+     * the view is in use, regardless of the page cache. Missing pages are
+     * loaded when the view is created.
+     *
+     * @param fromIndex low endpoint (inclusive) of the range
+     * @param toIndex high endpoint (exclusive) of the range
+     * @return an unmodifiable view of the specified range within this list
+     */
+    public List<T> pinnedSubList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex > toIndex || toIndex > size()) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex
+                    + ", toIndex: " + toIndex + ", size: " + size());
+        }
+        if (fromIndex == toIndex) {
+            return Collections.emptyList();
+        }
+        final int firstPage = fromIndex / pageSize;
+        List<List<T>> pinned = pinPages(firstPage, (toIndex - 1) / pageSize);
+        return new PinnedSubList<>(pinned, fromIndex - firstPage * pageSize,
+                toIndex - fromIndex, pageSize);
+    }
+
+    /**
+     * Collects the given pages for a sub list, loading the missing ones with
+     * as few backend calls as possible. Loaded pages are also offered to the
+     * normal page cache, within its limits.
+     *
+     * @param firstPage the first page of the range
+     * @param lastPage the last page of the range
+     * @return the pages
+     */
+    private List<List<T>> pinPages(int firstPage, int lastPage) {
+        List<List<T>> pinned = new ArrayList<>(lastPage - firstPage + 1);
+        boolean loaded = false;
+        int p = firstPage;
+        while (p <= lastPage) {
+            List<T> cached = findPageFromCache(p);
+            if (cached != null) {
+                pinned.add(cached);
+                p++;
+                continue;
+            }
+            int lastMissing = p;
+            while (lastMissing < lastPage && !isPageCached(lastMissing + 1)) {
+                lastMissing++;
+            }
+            pinned.addAll(loadPages(p, lastMissing - p + 1));
+            loaded = true;
+            p = lastMissing + 1;
+        }
+        if (loaded) {
+            if (pageCache != null) {
+                for (int i = 0; i < pinned.size(); i++) {
+                    pageCache.put(firstPage + i, pinned.get(i));
+                }
+            } else {
+                // the window must stay contiguous, keep the tail of the range
+                int count = Math.min(maxPages, pinned.size());
+                pages.clear();
+                pages.addAll(pinned.subList(pinned.size() - count, pinned.size()));
+                pageIndex = lastPage - count + 1;
+            }
+        }
+        return pinned;
+    }
+
+    private static class PinnedSubList<T> extends AbstractList<T> implements RandomAccess, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<T>> pages;
+        private final int offset;
+        private final int size;
+        private final int pageSize;
+
+        PinnedSubList(List<List<T>> pages, int offset, int size, int pageSize) {
+            this.pages = pages;
+            this.offset = offset;
+            this.size = size;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            final int position = offset + index;
+            return pages.get(position / pageSize).get(position % pageSize);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    public int getScanBatchSize() {
+        return scanBatchSize;
+    }
+
+    /**
+     * Sets the number of entities fetched at once in full scans, i.e. via
+     * {@link #iterator()} or when indexOf or contains needs to iterate
+     * through the list. Rounded down to whole pages. Only used with a
+     * {@link RangePagingProvider}, with other providers scans are done page by
+     * page.
+     *
+     * @param scanBatchSize the number of entities to fetch at once
+     */
+    public void setScanBatchSize(int scanBatchSize) {
+        if (scanBatchSize < 1) {
+            throw new IllegalArgumentException("Scan batch size must be positive");
+        }
+        this.scanBatchSize = scanBatchSize;
+    }
+
+    public StreamProvider<T> getStreamProvider() {
+        return streamProvider;
+    }
+
+    /**
+     * Sets a provider to stream all entities from the backend, used instead
+     * of paged queries by {@link #stream()} and when indexOf or contains needs
+     * to iterate through the list. Streams returned by {@link #stream()} must
+     * be closed by the caller to release e.g. the database cursor.
+     * {@link #iterator()} keeps using paged queries.
+     *
+     * @param streamProvider the stream provider, null to use paged queries
+     */
+    public void setStreamProvider(StreamProvider<T> streamProvider) {
+        this.streamProvider = streamProvider;
+    }
+
+    /**
+     * Returns an iterator that scans the list in large batches (see
+     * {@link #setScanBatchSize(int)}). Pages already in memory or in the
+     * shared page cache are used, and only the missing ones are fetched.
+     * Fetched batches bypass the page caches, so a full scan, e.g. an export,
+     * doesn't evict the pages the user is looking at. The
+     * {@link StreamProvider} is not used, as an iterator can't be closed if it
+     * is left before the end; use {@link #stream()} for that.
+     *
+     * @return an iterator over the list
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new ScanIterator<>(this, pageSize);
+    }
+
+    @Override
+    public Stream<T> stream() {
+        if (streamProvider != null) {
+            return streamProvider.stream();
+        }
+        return super.stream();
+    }
+
+    /**
+     * Finds the index of the given entity by scanning the whole list, via the
+     * {@link StreamProvider} if set. The stream is closed before returning.
+     *
+     * @param o the entity to search for
+     * @return the index of the entity, -1 if not found
+     */
+    int scanIndexOf(Object o) {
+        if (streamProvider != null) {
+            try (Stream<T> stream = streamProvider.stream()) {
+                return indexOf(o, stream.iterator());
+            }
+        }
+        return indexOf(o, iterator());
+    }
+
+    private static int indexOf(Object o, Iterator<?> it) {
+        for (int i = 0; it.hasNext(); i++) {
+            if (Objects.equals(o, it.next())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the size of the list for a full scan, -1 if the size is still
+     * being resolved asynchronously
+     */
+    int getScanSize() {
+        return isSizeKnown() || countExecutor == null ? size() : -1;
+    }
+
+    /**
+     * @return true if full scans fetch adjacent missing pages with one call
+     */
+    boolean isRangeScan() {
+        return rangeProvider != null;
+    }
+
+    /**
+     * Returns the given page for a full scan, from the memory or the shared
+     * page cache if available, without fetching it.
+     *
+     * @param page the index of a page
+     * @param pageSize the page size of the scan
+     * @return the page, null if not available
+     */
+    @SuppressWarnings("unchecked")
+    List<T> findAvailablePage(int page, int pageSize) {
+        List<T> entities = pageSize == this.pageSize ? findPageFromCache(page) : null;
+        if (entities == null && sharedPageCache != null) {
+            entities = (List<T>) sharedPageCache.get(new PageKey(queryId, getSortKey(), page, pageSize));
+        }
+        return entities;
+    }
+
+    /**
+     * Returns the given page for a full scan, fetched without storing it in
+     * the page caches of the list if not available.
+     *
+     * @param page the index of a page
+     * @param pageSize the page size of the scan
+     * @return the entities on the page
+     */
+    List<T> scanPage(int page, int pageSize) {
+        List<T> entities = findAvailablePage(page, pageSize);
+        return entities != null ? entities : fetchPage(page, pageSize);
+    }
+
+    /**
+     * Returns a spliterator that reads the list page by page. Like with
+     * {@link #iterator()}, pages already in memory or in the shared page cache
+     * are used, and the missing ones are fetched bypassing the page caches of
+     * the list. Only one page per spliterator is held, so e.g. exports can
+     * stream through large lists with bounded memory. Splitting happens on page boundaries, so
+     * {@link #parallelStream()} fetches different pages in parallel. In that
+     * case the providers must be thread safe.
+     * <p>
+     * The spliterator reports SIZED and SUBSIZED if the size of the list is
+     * known. If the size is still being resolved asynchronously, the pages are
+     * read until a page that is not full is found.
+     *
+     * @return a page aligned spliterator over the list
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        final int size = getScanSize();
+        if (size >= 0) {
+            return new PageSpliterator<>(this, pageSize, 0, (size + pageSize - 1) / pageSize, size);
+        }
+        return new PageSpliterator<>(this, pageSize, 0, Integer.MAX_VALUE, -1);
+    }
+
+    public boolean isCompactSerialization() {
+        return compactSerialization;
+    }
+
+    /**
+     * Sets the list to drop its cached pages and size when it is serialized,
+     * e.g. with session replication or passivation. Only the providers and
+     * the configuration of the list, and its access position, are written
+     * out. The pages and the size are fetched again lazily after
+     * deserialization. By default the cached pages are serialized with the
+     * list.
+     *
+     * @param compactSerialization true to leave cached pages and size out of
+     * the serialized form
+     */
+    public void setCompactSerialization(boolean compactSerialization) {
+        this.compactSerialization = compactSerialization;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (!compactSerialization) {
+            out.writeObject(pages);
+            out.writeObject(cachedSize);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (compactSerialization) {
+            pages = new ArrayList<>();
+            pageIndex = -10;
+        } else {
+            pages = (List<List<T>>) in.readObject();
+            cachedSize = (Integer) in.readObject();
+        }
+    }
+
+    /**
+     * Drops the page containing the given index from the memory, so that it is
+     * fetched again from the backend when accessed next time. Unlike
+     * {@link #reset()}, other pages and the size of the list are kept, so
+     * e.g. editing a row doesn't cause everything to be reloaded.
+     *
+     * @param index the index of a changed entity
+     */
+    public void invalidate(int index) {
+        invalidateRange(index, index + 1);
+    }
+
+    /**
+     * Drops the pages containing the given range from the memory, so that
+     * they are fetched again from the backend when accessed next time. Other
+     * pages and the size of the list are kept. If the number of entities in
+     * the list changes, use {@link #reset()} instead.
+     *
+     * @param fromIndex low endpoint (inclusive) of the changed range
+     * @param toIndex high endpoint (exclusive) of the changed range
+     */
+    public void invalidateRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        final int firstPage = fromIndex / pageSize;
+        final int lastPage = (toIndex - 1) / pageSize;
+        for (int page = firstPage; page <= lastPage; page++) {
+            if (pageCache != null) {
+                pageCache.remove(page);
+            } else if (isPageInWindow(page)) {
+                // leave a hole to keep the window contiguous
+                pages.set(page - pageIndex, null);
+            }
+            if (prefetchedPages != null) {
+                prefetchedPages.remove(page);
+            }
+            if (pageEndKeys != null) {
+                pageEndKeys.remove(page);
+            }
+            invalidateSharedPage(page);
+        }
+        if (indexCache != null) {
+            final int first = firstPage * pageSize;
+            final int end = (lastPage + 1) * pageSize;
+            indexCache.values().removeIf(i -> i >= first && i < end);
+        }
+    }
+
+    /**
+     * Replaces an entity in the pages kept in memory, e.g. after it has been
+     * edited and saved, without calling the backend. The entity must stay in
+     * the same position in the list, otherwise use
+     * {@link #invalidateRange(int, int)} or {@link #reset()}. If the entity is
+     * not in the memory, it is fetched from the backend when needed anyway.
+     *
+     * @param oldItem the entity currently in the list
+     * @param newItem the entity to replace it with
+     * @return true if the entity was found from the memory and replaced
+     */
+    public boolean replace(T oldItem, T newItem) {
+        boolean replaced = false;
+        if (pageCache != null) {
+            List<Integer> found = new ArrayList<>();
+            pageCache.forEachPage((i, page) -> {
+                if (page.contains(oldItem)) {
+                    found.add(i);
+                }
+            });
+            for (Integer page : found) {
+                pageCache.put(page, replaceInPage(page, pageCache.get(page), oldItem, newItem));
+            }
+            replaced = !found.isEmpty();
+        } else {
+            for (int i = 0; i < pages.size(); i++) {
+                List<T> page = pages.get(i);
+                if (page != null && page.contains(oldItem)) {
+                    pages.set(i, replaceInPage(pageIndex + i, page, oldItem, newItem));
+                    replaced = true;
+                }
+            }
+        }
+        if (indexCache != null) {
+            Integer index = indexCache.remove(oldItem);
+            if (index != null) {
+                indexCache.put(newItem, index);
+            }
+        }
+        return replaced;
+    }
+
+    private List<T> replaceInPage(int pageNumber, List<T> page, T oldItem, T newItem) {
+        // pages may be shared or unmodifiable, so patch a copy
+        List<T> copy = new ArrayList<>(page);
+        copy.replaceAll(e -> Objects.equals(e, oldItem) ? newItem : e);
+        invalidateSharedPage(pageNumber);
+        return copy;
+    }
+
+    void invalidateSharedPage(int page) {
+        if (sharedPageCache != null) {
+            sharedPageCache.invalidate(new PageKey(queryId, getSortKey(), page, pageSize));
+        }
+    }
+
+    /**
+     * Resets buffers used by the LazyList.
+     */
+    public void reset() {
+        pages.clear();
+        if (pageCache != null) {
+            pageCache.clear();
+        }
+        pageIndex = -10;
+        cachedSize = null;
+        pendingCount = null;
+        countGeneration++;
+        lastRequestedPage = -1;
         if (indexCache != null) {
             indexCache.clear();
         }
+        if (prefetchedPages != null) {
+            prefetchedPages.clear();
+        }
+        if (pageEndKeys != null) {
+            pageEndKeys.clear();
+        }
     }
 
 }
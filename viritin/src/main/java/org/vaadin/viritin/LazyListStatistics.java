@@ -0,0 +1,169 @@
+package org.vaadin.viritin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A simple in-memory {@link LazyList.MetricsListener} that aggregates the
+ * events of one or more LazyLists. The numbers can be exposed e.g. on a
+ * metrics endpoint of the application, to see how well the page caching works
+ * and to tune the page size and the number of cached pages.
+ * <p>
+ * The class is thread safe, so a single instance can be shared by all lists
+ * of the application.
+ */
+public class LazyListStatistics implements LazyList.MetricsListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder rowsFetched = new LongAdder();
+    private final LongAdder fetchNanos = new LongAdder();
+    private final AtomicLong maxFetchNanos = new AtomicLong();
+    private final LongAdder counts = new LongAdder();
+    private final LongAdder countNanos = new LongAdder();
+    private final AtomicLong maxCountNanos = new AtomicLong();
+
+    @Override
+    public void cacheHit(int pageIndex) {
+        hits.increment();
+    }
+
+    @Override
+    public void cacheMiss(int pageIndex) {
+        misses.increment();
+    }
+
+    @Override
+    public void cacheReset(int pageIndex) {
+        resets.increment();
+    }
+
+    @Override
+    public void entitiesFetched(int rows, long durationNanos) {
+        fetches.increment();
+        rowsFetched.add(rows);
+        fetchNanos.add(durationNanos);
+        maxFetchNanos.accumulateAndGet(durationNanos, Math::max);
+    }
+
+    @Override
+    public void sizeCounted(long durationNanos) {
+        counts.increment();
+        countNanos.add(durationNanos);
+        maxCountNanos.accumulateAndGet(durationNanos, Math::max);
+    }
+
+    /**
+     * @return the number of get() calls served from cached pages
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of get() calls that needed to load a page
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the ratio of hits to all get() calls, 0 if there are none
+     */
+    public double getHitRatio() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return the number of times the cached pages were dropped because the
+     * lists were accessed far from them
+     */
+    public long getResets() {
+        return resets.sum();
+    }
+
+    /**
+     * @return the number of backend calls for entities
+     */
+    public long getFetches() {
+        return fetches.sum();
+    }
+
+    /**
+     * @return the total number of rows returned by the backend
+     */
+    public long getRowsFetched() {
+        return rowsFetched.sum();
+    }
+
+    /**
+     * @return the average duration of backend calls for entities, in
+     * milliseconds
+     */
+    public double getAverageFetchMillis() {
+        long fetchCount = getFetches();
+        return fetchCount == 0 ? 0 : fetchNanos.sum() / (fetchCount * 1000000.0);
+    }
+
+    /**
+     * @return the longest backend call for entities, in milliseconds
+     */
+    public long getMaxFetchMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxFetchNanos.get());
+    }
+
+    /**
+     * @return the number of backend calls for the size of the lists
+     */
+    public long getCounts() {
+        return counts.sum();
+    }
+
+    /**
+     * @return the average duration of backend calls for the size, in
+     * milliseconds
+     */
+    public double getAverageCountMillis() {
+        long countCount = getCounts();
+        return countCount == 0 ? 0 : countNanos.sum() / (countCount * 1000000.0);
+    }
+
+    /**
+     * @return the longest backend call for the size, in milliseconds
+     */
+    public long getMaxCountMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxCountNanos.get());
+    }
+
+    /**
+     * Resets all the collected statistics.
+     */
+    public void clear() {
+        hits.reset();
+        misses.reset();
+        resets.reset();
+        fetches.reset();
+        rowsFetched.reset();
+        fetchNanos.reset();
+        maxFetchNanos.set(0);
+        counts.reset();
+        countNanos.reset();
+        maxCountNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LazyListStatistics{hits=%d, misses=%d, hitRatio=%.2f, resets=%d, "
+                + "fetches=%d, rowsFetched=%d, avgFetchMillis=%.1f, counts=%d, avgCountMillis=%.1f}",
+                getHits(), getMisses(), getHitRatio(), getResets(), getFetches(),
+                getRowsFetched(), getAverageFetchMillis(), getCounts(), getAverageCountMillis());
+    }
+
+}
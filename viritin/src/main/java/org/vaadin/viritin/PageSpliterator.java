@@ -0,0 +1,111 @@
+package org.vaadin.viritin;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Reads a {@link LazyList} page by page, holding only one page in memory.
+ * Pages already available are used like in {@link ScanIterator}, others are
+ * fetched bypassing the page caches of the list. Splits on page boundaries, so
+ * that parallel streams read different pages in parallel.
+ *
+ * @param <T> The type of the objects in the list
+ * @see LazyList#spliterator()
+ */
+class PageSpliterator<T> implements Spliterator<T> {
+
+    private final LazyList<T> list;
+    private final int pageSize;
+    private int page;
+    private int endPage;
+    private final int size;
+    private List<T> buffer;
+    private int position;
+
+    /**
+     * @param list the list to read
+     * @param pageSize the page size of the list when the read starts
+     * @param page the first page to read
+     * @param endPage the page where to stop, exclusive
+     * @param size the size of the list, -1 if unknown
+     */
+    PageSpliterator(LazyList<T> list, int pageSize, int page, int endPage, int size) {
+        this.list = list;
+        this.pageSize = pageSize;
+        this.page = page;
+        this.endPage = endPage;
+        this.size = size;
+    }
+
+    private boolean isSized() {
+        return size >= 0;
+    }
+
+    private List<T> nextPage() {
+        List<T> entities = list.scanPage(page++, pageSize);
+        if (!isSized() && entities.size() < pageSize) {
+            // the last page
+            endPage = page;
+        }
+        return entities;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (buffer == null || position >= buffer.size()) {
+            if (page >= endPage) {
+                return false;
+            }
+            buffer = nextPage();
+            position = 0;
+            if (buffer.isEmpty()) {
+                endPage = page;
+                return false;
+            }
+        }
+        action.accept(buffer.get(position++));
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (buffer != null && position < buffer.size()) {
+            // split only on page boundaries
+            return null;
+        }
+        if (isSized()) {
+            int remainingPages = endPage - page;
+            if (remainingPages < 2) {
+                return null;
+            }
+            int firstPage = page;
+            page += remainingPages / 2;
+            return new PageSpliterator<>(list, pageSize, firstPage, page, size);
+        }
+        if (page >= endPage) {
+            return null;
+        }
+        // size unknown, hand out one page at a time
+        List<T> entities = nextPage();
+        return Spliterators.spliterator(entities, Spliterator.ORDERED);
+    }
+
+    @Override
+    public long estimateSize() {
+        if (!isSized()) {
+            return Long.MAX_VALUE;
+        }
+        long remaining = Math.max(0, Math.min((long) endPage * pageSize, size) - (long) page * pageSize);
+        if (buffer != null) {
+            remaining += buffer.size() - position;
+        }
+        return remaining;
+    }
+
+    @Override
+    public int characteristics() {
+        return isSized() ? ORDERED | SIZED | SUBSIZED : ORDERED;
+    }
+}
@@ -0,0 +1,100 @@
+package org.vaadin.viritin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates through a {@link LazyList} in large batches, for full scans like
+ * exports, or indexOf and contains without an index provider. Pages already
+ * available are used and only the missing ones are fetched. Fetched batches
+ * bypass the page caches of the list.
+ *
+ * @param <T> The type of the objects in the list
+ * @see LazyList#iterator()
+ */
+class ScanIterator<T> implements Iterator<T> {
+
+    private final LazyList<T> list;
+    private final int pageSize;
+    private final int size;
+    private List<T> batch = Collections.emptyList();
+    private int batchStart;
+    private int index;
+    private boolean last;
+
+    /**
+     * @param list the list to scan
+     * @param pageSize the page size of the list when the scan starts
+     */
+    ScanIterator(LazyList<T> list, int pageSize) {
+        this.list = list;
+        this.pageSize = pageSize;
+        this.size = list.getScanSize();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (index < batchStart + batch.size()) {
+            return true;
+        }
+        if (last || size >= 0 && index >= size) {
+            return false;
+        }
+        batchStart = index;
+        batch = nextBatch();
+        return !batch.isEmpty();
+    }
+
+    private List<T> nextBatch() {
+        // batches are full pages, so the index is page aligned
+        final int firstPage = index / pageSize;
+        if (!list.isRangeScan()) {
+            List<T> entities = list.scanPage(firstPage, pageSize);
+            last = entities.size() < pageSize;
+            return entities;
+        }
+        int pages = Math.max(1, list.getScanBatchSize() / pageSize);
+        if (size >= 0) {
+            pages = Math.min(pages, (size - index + pageSize - 1) / pageSize);
+        }
+        final int end = firstPage + pages;
+        List<T> rows = new ArrayList<>(pages * pageSize);
+        int page = firstPage;
+        while (page < end && !last) {
+            List<T> available = list.findAvailablePage(page, pageSize);
+            if (available != null) {
+                rows.addAll(available);
+                last = available.size() < pageSize;
+                page++;
+                continue;
+            }
+            // only the pages not available are fetched, with one call
+            int runEnd = page + 1;
+            while (runEnd < end && list.findAvailablePage(runEnd, pageSize) == null) {
+                runEnd++;
+            }
+            final int limit = (runEnd - page) * pageSize;
+            List<T> fetched = list.fetchRange(page * pageSize, limit);
+            rows.addAll(fetched);
+            last = fetched.size() < limit;
+            page = runEnd;
+        }
+        return rows;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(index++ - batchStart);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported.");
+    }
+}
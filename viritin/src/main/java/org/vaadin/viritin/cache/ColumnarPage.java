@@ -0,0 +1,243 @@
+package org.vaadin.viritin.cache;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A compact, read-only page of rows, stored as columns of primitive arrays
+ * instead of row objects. Row objects are created only when an element is
+ * accessed, so a cached page of e.g. numeric report rows retains a fraction of
+ * the heap that the same rows would as objects with boxed fields.
+ * <p>
+ * A paging provider can return a ColumnarPage as its page:
+ * <pre>
+ * return ColumnarPage.of(row -&gt; new ReportRow(row.getLong(0),
+ *         row.getDouble(1), row.getString(2)), ids, amounts, names);
+ * </pre>
+ * Supported column types are {@code long[]} (also for dates, e.g. as epoch
+ * millis), {@code double[]} and {@code String[]}. Equal strings in a String
+ * column are deduplicated to a single instance.
+ * <p>
+ * As {@link #get(int)} creates a new row object on every call, the row type
+ * must implement equals and hashCode based on its values for e.g.
+ * {@link #indexOf(Object)}, {@link #contains(Object)} and the index lookups of
+ * LazyList to find the rows. With identity equality they never match.
+ *
+ * @param <T> the type of the rows created from the columns
+ */
+public final class ColumnarPage<T> extends AbstractList<T> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the row objects, typically lightweight views or DTOs, from the
+     * columns of a page.
+     *
+     * @param <T> the type of the rows
+     */
+    public interface RowFactory<T> extends Serializable {
+
+        /**
+         * @param row accessor to the values of the row
+         * @return the row object
+         */
+        public T create(Row row);
+    }
+
+    /**
+     * Accessor to the values of one row of a ColumnarPage.
+     */
+    public static final class Row implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] columns;
+        private final int index;
+
+        private Row(Object[] columns, int index) {
+            this.columns = columns;
+            this.index = index;
+        }
+
+        /**
+         * @param column the index of a long column
+         * @return the value of the column on this row
+         */
+        public long getLong(int column) {
+            return ((long[]) columns[column])[index];
+        }
+
+        /**
+         * @param column the index of a double column
+         * @return the value of the column on this row
+         */
+        public double getDouble(int column) {
+            return ((double[]) columns[column])[index];
+        }
+
+        /**
+         * @param column the index of a String column
+         * @return the value of the column on this row
+         */
+        public String getString(int column) {
+            return ((String[]) columns[column])[index];
+        }
+    }
+
+    private final RowFactory<T> rowFactory;
+    private final Object[] columns;
+    private final int offset;
+    private final int size;
+
+    private ColumnarPage(RowFactory<T> rowFactory, Object[] columns, int offset, int size) {
+        this.rowFactory = rowFactory;
+        this.columns = columns;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * Creates a page from the given columns. Numeric arrays are used as such,
+     * so they must not be modified afterwards. String arrays are copied while
+     * deduplicating their values, the given arrays are not modified.
+     *
+     * @param <T> the type of the rows
+     * @param rowFactory creates the row objects from the columns
+     * @param columns the columns, long[], double[] or String[] arrays of the
+     * same length
+     * @return the page
+     */
+    public static <T> ColumnarPage<T> of(RowFactory<T> rowFactory, Object... columns) {
+        final Object[] stored = columns.clone();
+        int size = -1;
+        for (int i = 0; i < stored.length; i++) {
+            final Object column = stored[i];
+            int length;
+            if (column instanceof long[]) {
+                length = ((long[]) column).length;
+            } else if (column instanceof double[]) {
+                length = ((double[]) column).length;
+            } else if (column instanceof String[]) {
+                String[] deduplicated = deduplicate((String[]) column);
+                stored[i] = deduplicated;
+                length = deduplicated.length;
+            } else {
+                throw new IllegalArgumentException("Unsupported column type: "
+                        + (column == null ? null : column.getClass().getSimpleName()));
+            }
+            if (size != -1 && length != size) {
+                throw new IllegalArgumentException("Columns must be of the same length");
+            }
+            size = length;
+        }
+        return new ColumnarPage<>(rowFactory, stored, 0, Math.max(size, 0));
+    }
+
+    /**
+     * @param column the values of a String column
+     * @return a copy of the column, with equal values as the same instance
+     */
+    private static String[] deduplicate(String[] column) {
+        String[] copy = new String[column.length];
+        Map<String, String> canonical = new HashMap<>();
+        for (int i = 0; i < column.length; i++) {
+            if (column[i] != null) {
+                String existing = canonical.putIfAbsent(column[i], column[i]);
+                copy[i] = existing != null ? existing : column[i];
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return rowFactory.create(new Row(columns, offset + index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a view to the given range, sharing the columns of this page.
+     * Use {@link #copyOfRange(int, int)} to get an independent page, e.g. to
+     * cache only a part of a larger result.
+     */
+    @Override
+    public ColumnarPage<T> subList(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        return new ColumnarPage<>(rowFactory, columns, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * @param fromIndex low endpoint (inclusive) of the range
+     * @param toIndex high endpoint (exclusive) of the range
+     * @return a new page containing copies of the columns in the given range
+     */
+    public ColumnarPage<T> copyOfRange(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        final int from = offset + fromIndex;
+        final int to = offset + toIndex;
+        Object[] copy = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] instanceof long[]) {
+                copy[i] = Arrays.copyOfRange((long[]) columns[i], from, to);
+            } else if (columns[i] instanceof double[]) {
+                copy[i] = Arrays.copyOfRange((double[]) columns[i], from, to);
+            } else {
+                copy[i] = Arrays.copyOfRange((String[]) columns[i], from, to);
+            }
+        }
+        return new ColumnarPage<>(rowFactory, copy, 0, toIndex - fromIndex);
+    }
+
+    private void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range: " + fromIndex + "-" + toIndex + ", Size: " + size);
+        }
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Estimates the memory retained by the rows of this page, for e.g.
+     * {@link WeightedPageCache}. The columns of a view are accounted only for
+     * the rows in the view.
+     *
+     * @return the estimated size of the page in bytes
+     */
+    public long estimateBytes() {
+        long bytes = 16;
+        for (Object column : columns) {
+            bytes += 16;
+            if (column instanceof String[]) {
+                // references plus each distinct string once
+                bytes += 4L * size;
+                Set<String> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+                String[] strings = (String[]) column;
+                for (int i = offset; i < offset + size; i++) {
+                    if (strings[i] != null && distinct.add(strings[i])) {
+                        bytes += 40 + 2L * strings[i].length();
+                    }
+                }
+            } else {
+                bytes += 8L * size;
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,133 @@
+package org.vaadin.viritin.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link PageCache} decorator that expires pages a given time after they
+ * were cached, so that changes in the backend become visible without an
+ * explicit refresh. Eviction is left to the decorated cache, e.g.
+ * {@link LruPageCache} or {@link WeightedPageCache}.
+ * <p>
+ * Cached pages are not serialized, the cache is empty after deserialization
+ * and is filled again lazily.
+ *
+ * @param <T> the type of the entities on the pages
+ */
+public class ExpiringPageCache<T> implements PageCache<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PageCache<T> delegate;
+    private final long timeToLiveMillis;
+    private transient Map<Integer, Long> expirationTimes;
+    private transient LongSupplier clock;
+
+    /**
+     * @param delegate the cache holding the pages
+     * @param timeToLive how long pages are kept after they have been cached
+     * @param unit the unit of timeToLive
+     */
+    public ExpiringPageCache(PageCache<T> delegate, long timeToLive, TimeUnit unit) {
+        this(delegate, timeToLive, unit, null);
+    }
+
+    /**
+     * Creates a cache that reads the time from the given clock instead of the
+     * system clock, e.g. to test expiration without waiting. The clock is not
+     * serialized, the system clock is used after deserialization.
+     *
+     * @param delegate the cache holding the pages
+     * @param timeToLive how long pages are kept after they have been cached
+     * @param unit the unit of timeToLive
+     * @param clock returns the current time in milliseconds, null to use
+     * {@link System#currentTimeMillis()}
+     */
+    public ExpiringPageCache(PageCache<T> delegate, long timeToLive, TimeUnit unit, LongSupplier clock) {
+        this.delegate = delegate;
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+        this.clock = clock;
+    }
+
+    private long currentTimeMillis() {
+        return clock != null ? clock.getAsLong() : System.currentTimeMillis();
+    }
+
+    private Map<Integer, Long> getExpirationTimes() {
+        if (expirationTimes == null) {
+            expirationTimes = new HashMap<>();
+            // pages of a deserialized delegate have no known age
+            delegate.clear();
+        }
+        return expirationTimes;
+    }
+
+    private boolean isExpired(int pageIndex) {
+        Long expires = getExpirationTimes().get(pageIndex);
+        return expires == null || expires < currentTimeMillis();
+    }
+
+    public PageCache<T> getDelegate() {
+        return delegate;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    @Override
+    public List<T> get(int pageIndex) {
+        if (isExpired(pageIndex)) {
+            remove(pageIndex);
+            return null;
+        }
+        return delegate.get(pageIndex);
+    }
+
+    @Override
+    public boolean containsPage(int pageIndex) {
+        return !isExpired(pageIndex) && delegate.containsPage(pageIndex);
+    }
+
+    @Override
+    public void put(int pageIndex, List<T> page) {
+        Map<Integer, Long> times = getExpirationTimes();
+        delegate.put(pageIndex, page);
+        times.put(pageIndex, currentTimeMillis() + timeToLiveMillis);
+        if (times.size() > 2 * delegate.size() + 16) {
+            // forget pages the delegate has evicted
+            times.keySet().removeIf(p -> !delegate.containsPage(p));
+        }
+    }
+
+    @Override
+    public void remove(int pageIndex) {
+        getExpirationTimes().remove(pageIndex);
+        delegate.remove(pageIndex);
+    }
+
+    @Override
+    public void clear() {
+        getExpirationTimes().clear();
+        delegate.clear();
+    }
+
+    @Override
+    public void forEachPage(BiConsumer<Integer, List<T>> action) {
+        delegate.forEachPage((pageIndex, page) -> {
+            if (!isExpired(pageIndex)) {
+                action.accept(pageIndex, page);
+            }
+        });
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.vaadin.viritin.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link PageCache} that holds a fixed number of pages and evicts the least
+ * frequently used page when full. Of pages used equally often, the one cached
+ * first is evicted. Suits lists where users keep returning to a few positions,
+ * like the beginning of the list, while also scrolling elsewhere.
+ * <p>
+ * Finding the page to evict is a linear scan, so this implementation is meant
+ * for small page counts, like the ones normally held by a LazyList.
+ * <p>
+ * Cached pages are not serialized, the cache is empty after deserialization
+ * and is filled again lazily.
+ *
+ * @param <T> the type of the entities on the pages
+ */
+public class LfuPageCache<T> implements PageCache<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxPages;
+    private transient Map<Integer, List<T>> pages;
+    private transient Map<Integer, Integer> useCounts;
+
+    /**
+     * @param maxPages the maximum number of pages held in memory
+     */
+    public LfuPageCache(int maxPages) {
+        if (maxPages < 1) {
+            throw new IllegalArgumentException("maxPages must be at least 1");
+        }
+        this.maxPages = maxPages;
+    }
+
+    private Map<Integer, List<T>> getPages() {
+        if (pages == null) {
+            pages = new LinkedHashMap<>();
+            useCounts = new HashMap<>();
+        }
+        return pages;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    @Override
+    public List<T> get(int pageIndex) {
+        List<T> page = getPages().get(pageIndex);
+        if (page != null) {
+            useCounts.merge(pageIndex, 1, Integer::sum);
+        }
+        return page;
+    }
+
+    @Override
+    public boolean containsPage(int pageIndex) {
+        return getPages().containsKey(pageIndex);
+    }
+
+    @Override
+    public void put(int pageIndex, List<T> page) {
+        if (!getPages().containsKey(pageIndex) && pages.size() >= maxPages) {
+            evict();
+        }
+        pages.put(pageIndex, page);
+        useCounts.merge(pageIndex, 1, Integer::sum);
+    }
+
+    private void evict() {
+        Integer leastUsed = null;
+        int leastUseCount = Integer.MAX_VALUE;
+        // iteration order of pages is insertion order
+        for (Integer pageIndex : pages.keySet()) {
+            int useCount = useCounts.get(pageIndex);
+            if (useCount < leastUseCount) {
+                leastUsed = pageIndex;
+                leastUseCount = useCount;
+            }
+        }
+        remove(leastUsed);
+    }
+
+    @Override
+    public void remove(int pageIndex) {
+        getPages().remove(pageIndex);
+        useCounts.remove(pageIndex);
+    }
+
+    @Override
+    public void clear() {
+        getPages().clear();
+        useCounts.clear();
+    }
+
+    @Override
+    public void forEachPage(BiConsumer<Integer, List<T>> action) {
+        getPages().forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return getPages().size();
+    }
+
+}
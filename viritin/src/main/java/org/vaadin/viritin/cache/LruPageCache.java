@@ -0,0 +1,87 @@
+package org.vaadin.viritin.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link PageCache} that holds a fixed number of pages and evicts the least
+ * recently used page when full.
+ * <p>
+ * Cached pages are not serialized, the cache is empty after deserialization
+ * and is filled again lazily.
+ *
+ * @param <T> the type of the entities on the pages
+ */
+public class LruPageCache<T> implements PageCache<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxPages;
+    private transient LinkedHashMap<Integer, List<T>> pages;
+
+    /**
+     * @param maxPages the maximum number of pages held in memory
+     */
+    public LruPageCache(int maxPages) {
+        if (maxPages < 1) {
+            throw new IllegalArgumentException("maxPages must be at least 1");
+        }
+        this.maxPages = maxPages;
+    }
+
+    private Map<Integer, List<T>> getPages() {
+        if (pages == null) {
+            pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                    return size() > maxPages;
+                }
+            };
+        }
+        return pages;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    @Override
+    public List<T> get(int pageIndex) {
+        return getPages().get(pageIndex);
+    }
+
+    @Override
+    public boolean containsPage(int pageIndex) {
+        return getPages().containsKey(pageIndex);
+    }
+
+    @Override
+    public void put(int pageIndex, List<T> page) {
+        getPages().put(pageIndex, page);
+    }
+
+    @Override
+    public void remove(int pageIndex) {
+        getPages().remove(pageIndex);
+    }
+
+    @Override
+    public void clear() {
+        getPages().clear();
+    }
+
+    @Override
+    public void forEachPage(BiConsumer<Integer, List<T>> action) {
+        getPages().forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return getPages().size();
+    }
+
+}
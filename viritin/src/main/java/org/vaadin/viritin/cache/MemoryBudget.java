@@ -0,0 +1,89 @@
+package org.vaadin.viritin.cache;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.vaadin.server.VaadinSession;
+
+/**
+ * A memory budget shared by several {@link WeightedPageCache}s, e.g. all lazy
+ * lists of a VaadinSession. When the estimated memory used by the caches
+ * exceeds the budget, the cache that is being filled evicts its least recently
+ * used pages until the total is within the budget again, or only the page
+ * being added is left.
+ * <p>
+ * The usage is calculated from the caches that are still in use, so caches
+ * that are no longer referenced don't consume the budget.
+ */
+public class MemoryBudget implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long maxBytes;
+    private transient Map<WeightedPageCache<?>, Boolean> caches;
+
+    /**
+     * @param maxBytes the maximum estimated bytes the caches may hold in total
+     */
+    public MemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the memory budget of the given session, creating it if it
+     * doesn't exist yet. The session must be locked by the current thread.
+     *
+     * @param session the session
+     * @param maxBytes the maximum estimated bytes, used if the budget is
+     * created
+     * @return the memory budget of the session
+     */
+    public static MemoryBudget forSession(VaadinSession session, long maxBytes) {
+        MemoryBudget budget = session.getAttribute(MemoryBudget.class);
+        if (budget == null) {
+            budget = new MemoryBudget(maxBytes);
+            session.setAttribute(MemoryBudget.class, budget);
+        }
+        return budget;
+    }
+
+    synchronized void register(WeightedPageCache<?> cache) {
+        if (caches == null) {
+            caches = new WeakHashMap<>();
+        }
+        caches.put(cache, Boolean.TRUE);
+    }
+
+    synchronized void unregister(WeightedPageCache<?> cache) {
+        if (caches != null) {
+            caches.remove(cache);
+        }
+    }
+
+    /**
+     * @return the estimated bytes currently held by the caches sharing this
+     * budget
+     */
+    public synchronized long getUsage() {
+        long usage = 0;
+        if (caches != null) {
+            for (WeightedPageCache<?> cache : caches.keySet()) {
+                usage += cache.getWeight();
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * @return true if the caches currently hold more than the budget allows
+     */
+    public boolean isExceeded() {
+        return getUsage() > maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+}
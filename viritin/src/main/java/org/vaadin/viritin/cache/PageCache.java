@@ -0,0 +1,70 @@
+package org.vaadin.viritin.cache;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A cache of "pages" of entities, keyed by the index of the page. Used by
+ * {@link org.vaadin.viritin.LazyList} and
+ * {@link org.vaadin.viritin.grid.SizelessPagingDataCommunicator} to keep
+ * recently used pages in memory.
+ * Unlike the default sliding window of the LazyList, pages in a PageCache don't
+ * need to be contiguous, so jumping back and forth between distant positions
+ * doesn't drop the whole cache.
+ * <p>
+ * Implementations decide which pages to evict. They are used from one thread
+ * at a time, like the LazyList itself.
+ *
+ * @param <T> the type of the entities on the pages
+ */
+public interface PageCache<T> extends Serializable {
+
+    /**
+     * Returns a page from the cache and records it as accessed.
+     *
+     * @param pageIndex the index of the page
+     * @return the page or null if it is not in the cache
+     */
+    public List<T> get(int pageIndex);
+
+    /**
+     * Checks if the page is in the cache, without recording it as accessed.
+     *
+     * @param pageIndex the index of the page
+     * @return true if the page is cached
+     */
+    public boolean containsPage(int pageIndex);
+
+    /**
+     * Adds a page to the cache, possibly evicting some other pages.
+     *
+     * @param pageIndex the index of the page
+     * @param page the entities on the page
+     */
+    public void put(int pageIndex, List<T> page);
+
+    /**
+     * Removes a page from the cache.
+     *
+     * @param pageIndex the index of the page
+     */
+    public void remove(int pageIndex);
+
+    /**
+     * Removes all pages from the cache.
+     */
+    public void clear();
+
+    /**
+     * Iterates through the cached pages, without recording them as accessed.
+     *
+     * @param action the action called with the page index and the page
+     */
+    public void forEachPage(BiConsumer<Integer, List<T>> action);
+
+    /**
+     * @return the number of pages currently in the cache
+     */
+    public int size();
+}
@@ -0,0 +1,110 @@
+package org.vaadin.viritin.cache;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Identifies a page of a query, so that the same page can be recognized across
+ * lists and sessions. Consists of a user supplied query identity, the sort
+ * order used, the index of the page and the page size. A range of rows fetched
+ * with one call, e.g. several adjacent pages, is identified with
+ * {@link #ofRange(Object, Object, int, int)}.
+ */
+public final class PageKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object queryId;
+    private final Object sortKey;
+    private final int pageIndex;
+    private final int pageSize;
+    private final boolean range;
+
+    /**
+     * @param queryId the identity of the query, must implement equals and
+     * hashCode and identify everything that affects the results (filters,
+     * user specific restrictions etc.)
+     * @param sortKey a value identifying the sort order, null for natural order
+     * @param pageIndex the index of the page
+     * @param pageSize the page size
+     */
+    public PageKey(Object queryId, Object sortKey, int pageIndex, int pageSize) {
+        this(queryId, sortKey, pageIndex, pageSize, false);
+    }
+
+    private PageKey(Object queryId, Object sortKey, int first, int size, boolean range) {
+        this.queryId = Objects.requireNonNull(queryId, "queryId must not be null");
+        this.sortKey = sortKey;
+        this.pageIndex = first;
+        this.pageSize = size;
+        this.range = range;
+    }
+
+    /**
+     * Creates a key for a range of rows, never equal to the key of a page.
+     * For a range key, {@link #getPageIndex()} returns the first row and
+     * {@link #getPageSize()} the number of rows.
+     *
+     * @param queryId the identity of the query
+     * @param sortKey a value identifying the sort order, null for natural order
+     * @param firstRow the index of the first row
+     * @param rows the number of rows
+     * @return the key of the range
+     */
+    public static PageKey ofRange(Object queryId, Object sortKey, int firstRow, int rows) {
+        return new PageKey(queryId, sortKey, firstRow, rows, true);
+    }
+
+    public Object getQueryId() {
+        return queryId;
+    }
+
+    public Object getSortKey() {
+        return sortKey;
+    }
+
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return true if this key identifies a range of rows instead of a page
+     */
+    public boolean isRange() {
+        return range;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PageKey)) {
+            return false;
+        }
+        PageKey other = (PageKey) obj;
+        return pageIndex == other.pageIndex && pageSize == other.pageSize
+                && range == other.range && queryId.equals(other.queryId)
+                && Objects.equals(sortKey, other.sortKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(queryId, sortKey, pageIndex, pageSize, range);
+    }
+
+    @Override
+    public String toString() {
+        if (range) {
+            return "PageKey{" + queryId + ", " + sortKey + ", rows " + pageIndex
+                    + "+" + pageSize + "}";
+        }
+        return "PageKey{" + queryId + ", " + sortKey + ", page " + pageIndex
+                + "/" + pageSize + "}";
+    }
+
+}
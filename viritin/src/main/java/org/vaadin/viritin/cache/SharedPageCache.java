@@ -0,0 +1,224 @@
+package org.vaadin.viritin.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An application scoped, thread safe second level cache for pages of
+ * entities, shared by all lists (and sessions) that are configured to use it.
+ * When many users browse the same data, e.g. a product catalogue, each page is
+ * fetched from the backend only once per time-to-live.
+ * <p>
+ * The cache is bounded by the number of pages and by a time-to-live. When the
+ * maximum number of pages is exceeded, the pages cached first are evicted
+ * first. Pages are stored as unmodifiable lists, as they are shared between
+ * threads. Note that the entities themselves are shared as well, so they
+ * should not be modified by the users of the cache.
+ * <p>
+ * To avoid storing pages fetched before the data was modified, read the
+ * {@link #getGeneration() generation} before fetching a page and pass it to
+ * {@link #put(PageKey, List, long)}. The page is then dropped if its query has
+ * been invalidated meanwhile.
+ * <p>
+ * Create one instance per application (e.g. a static field or a singleton
+ * bean) and pass it to {@link org.vaadin.viritin.LazyList#setSharedPageCache}.
+ * The cache is not meant to be serialized with the sessions.
+ */
+public class SharedPageCache {
+
+    private static class Entry {
+
+        private final PageKey key;
+        private final List<?> page;
+        private final long expires;
+
+        Entry(PageKey key, List<?> page, long expires) {
+            this.key = key;
+            this.page = page;
+            this.expires = expires;
+        }
+    }
+
+    private final Map<PageKey, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    // generations of the latest invalidations, per query and of the whole cache
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<Object, Long> invalidations = new ConcurrentHashMap<>();
+    private volatile long allInvalidated;
+    private final int maxPages;
+    private final long timeToLiveMillis;
+
+    /**
+     * @param maxPages the maximum number of pages held in the cache
+     * @param timeToLive the time pages are kept in the cache
+     * @param unit the unit of timeToLive
+     */
+    public SharedPageCache(int maxPages, long timeToLive, TimeUnit unit) {
+        if (maxPages < 1) {
+            throw new IllegalArgumentException("maxPages must be at least 1");
+        }
+        this.maxPages = maxPages;
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+    }
+
+    /**
+     * @param key the key of the page
+     * @return the cached page, or null if the page is not cached or has
+     * expired
+     */
+    public List<?> get(PageKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.page;
+    }
+
+    /**
+     * Returns the current generation of the cache, to be read before fetching
+     * a page that is then stored with {@link #put(PageKey, List, long)}.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Puts a page to the cache, unless the query of the page has been
+     * invalidated after the given generation was read. This way a page
+     * fetched before e.g. an update isn't stored after the invalidation that
+     * followed the update.
+     *
+     * @param <T> the type of entities on the page
+     * @param key the key of the page
+     * @param page the page
+     * @param fetchGeneration the generation read before fetching the page
+     * @return the unmodifiable copy of the page that was stored in the cache,
+     * or the page itself if it is a (read-only) {@link ColumnarPage}. Returned
+     * also if the page is dropped.
+     */
+    public <T> List<T> put(PageKey key, List<T> page, long fetchGeneration) {
+        List<T> copy = put(key, page);
+        // checked after storing, so that an invalidation running meanwhile
+        // either removes the page or is seen here
+        if (isInvalidatedAfter(key.getQueryId(), fetchGeneration)) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.page == copy) {
+                entries.remove(key, entry);
+            }
+        }
+        return copy;
+    }
+
+    private boolean isInvalidatedAfter(Object queryId, long fetchGeneration) {
+        if (allInvalidated > fetchGeneration) {
+            return true;
+        }
+        Long invalidated = invalidations.get(queryId);
+        return invalidated != null && invalidated > fetchGeneration;
+    }
+
+    /**
+     * Puts a page to the cache.
+     *
+     * @param <T> the type of entities on the page
+     * @param key the key of the page
+     * @param page the page
+     * @return the unmodifiable copy of the page that was stored in the cache,
+     * or the page itself if it is a (read-only) {@link ColumnarPage}
+     * @see #put(PageKey, List, long)
+     */
+    public <T> List<T> put(PageKey key, List<T> page) {
+        List<T> copy = page instanceof ColumnarPage ? page
+                : Collections.unmodifiableList(new ArrayList<>(page));
+        Entry entry = new Entry(key, copy, System.currentTimeMillis() + timeToLiveMillis);
+        entries.put(key, entry);
+        insertionOrder.add(entry);
+        while (entries.size() > maxPages) {
+            Entry eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            queued.decrementAndGet();
+            entries.remove(eldest.key, eldest);
+        }
+        if (queued.incrementAndGet() > 2 * maxPages) {
+            // drop bookkeeping of entries already replaced or invalidated
+            insertionOrder.removeIf(e -> entries.get(e.key) != e);
+            queued.set(insertionOrder.size());
+        }
+        return copy;
+    }
+
+    /**
+     * Removes all pages of the given query from the cache, e.g. after the
+     * underlying data has been modified.
+     *
+     * @param queryId the identity of the query
+     */
+    public void invalidate(Object queryId) {
+        bumpGeneration(queryId);
+        entries.keySet().removeIf(key -> key.getQueryId().equals(queryId));
+    }
+
+    /**
+     * Removes a single page from the cache. Pages of the same query being
+     * fetched are not stored.
+     *
+     * @param key the key of the page
+     */
+    public void invalidate(PageKey key) {
+        bumpGeneration(key.getQueryId());
+        entries.remove(key);
+    }
+
+    private void bumpGeneration(Object queryId) {
+        invalidations.merge(queryId, generation.incrementAndGet(), Math::max);
+        if (invalidations.size() > maxPages) {
+            // forget the queries, dropping the pages of all fetches in flight
+            invalidations.clear();
+            allInvalidated = generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes all pages from the cache.
+     */
+    public void invalidateAll() {
+        invalidations.clear();
+        allInvalidated = generation.incrementAndGet();
+        entries.clear();
+        insertionOrder.clear();
+        queued.set(0);
+    }
+
+    /**
+     * @return the number of pages currently in the cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.vaadin.viritin.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent identical backend calls. If a call with the same key
+ * is already in progress, the caller waits for it and gets the same result,
+ * instead of calling the backend again. Prevents e.g. a thundering herd of
+ * identical queries after a cache has been invalidated, when many users
+ * request the same page at the same time.
+ * <p>
+ * Only calls that overlap in time are merged, results are not cached. Create
+ * one instance per application and share it by e.g.
+ * {@link org.vaadin.viritin.LazyList} and
+ * {@link org.vaadin.viritin.grid.SizelessPagingDataCommunicator} instances.
+ * As results are shared between callers, they should not be modified.
+ *
+ * @param <K> the type of keys identifying the calls
+ * @param <V> the type of results
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Executes the call, unless an identical call is already in progress, in
+     * which case its result is returned.
+     *
+     * @param key the key identifying the call, with proper equals and
+     * hashCode
+     * @param call the call to execute
+     * @return the result of the call
+     */
+    public V execute(K key, Supplier<V> call) {
+        FutureTask<V> task = new FutureTask<>(call::get);
+        FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            task.run();
+            return await(task);
+        } finally {
+            inFlight.remove(key, task);
+        }
+    }
+
+    private V await(FutureTask<V> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a result", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @param key the key identifying the call
+     * @return true if a call with the given key is in progress
+     */
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * @return the number of calls currently in progress
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+}
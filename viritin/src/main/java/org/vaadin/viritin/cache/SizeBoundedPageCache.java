@@ -0,0 +1,101 @@
+package org.vaadin.viritin.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link PageCache} that is bounded by the total number of entities on the
+ * cached pages rather than by the number of pages. Least recently used pages
+ * are evicted when the limit is exceeded, but the most recently added page is
+ * always kept.
+ * <p>
+ * Cached pages are not serialized, the cache is empty after deserialization
+ * and is filled again lazily.
+ *
+ * @param <T> the type of the entities on the pages
+ */
+public class SizeBoundedPageCache<T> implements PageCache<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long maxSize;
+    private transient LinkedHashMap<Integer, List<T>> pages;
+    private transient long currentSize;
+
+    /**
+     * @param maxSize the maximum number of entities held in memory
+     */
+    public SizeBoundedPageCache(long maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+    }
+
+    private Map<Integer, List<T>> getPages() {
+        if (pages == null) {
+            pages = new LinkedHashMap<>(16, 0.75f, true);
+            currentSize = 0;
+        }
+        return pages;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of entities currently held in the cache
+     */
+    public long getCurrentSize() {
+        return currentSize;
+    }
+
+    @Override
+    public List<T> get(int pageIndex) {
+        return getPages().get(pageIndex);
+    }
+
+    @Override
+    public boolean containsPage(int pageIndex) {
+        return getPages().containsKey(pageIndex);
+    }
+
+    @Override
+    public void put(int pageIndex, List<T> page) {
+        remove(pageIndex);
+        pages.put(pageIndex, page);
+        currentSize += page.size();
+        while (currentSize > maxSize && pages.size() > 1) {
+            // eldest entry is the least recently used one
+            remove(pages.keySet().iterator().next());
+        }
+    }
+
+    @Override
+    public void remove(int pageIndex) {
+        List<T> removed = getPages().remove(pageIndex);
+        if (removed != null) {
+            currentSize -= removed.size();
+        }
+    }
+
+    @Override
+    public void clear() {
+        getPages().clear();
+        currentSize = 0;
+    }
+
+    @Override
+    public void forEachPage(BiConsumer<Integer, List<T>> action) {
+        getPages().forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return getPages().size();
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.vaadin.viritin.cache;
+
+import java.io.Serializable;
+
+/**
+ * Estimates the memory consumption of an entity, in bytes. Used by
+ * {@link WeightedPageCache} to bound the memory used by cached pages.
+ * Estimates don't need to be exact, but they should be cheap to calculate and
+ * roughly proportional to the real size of the entity.
+ *
+ * @param <T> the type of the entities
+ */
+public interface Weigher<T> extends Serializable {
+
+    /**
+     * @param entity the entity
+     * @return the estimated size of the entity in bytes
+     */
+    public long weigh(T entity);
+
+    /**
+     * Creates a weigher that gives all entities the same weight.
+     *
+     * @param <T> the type of the entities
+     * @param bytesPerEntity the estimated size of one entity
+     * @return the weigher
+     */
+    public static <T> Weigher<T> perEntity(long bytesPerEntity) {
+        return entity -> bytesPerEntity;
+    }
+}
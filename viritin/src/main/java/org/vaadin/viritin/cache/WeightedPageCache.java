@@ -0,0 +1,137 @@
+package org.vaadin.viritin.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link PageCache} bounded by the estimated memory consumption of the
+ * cached pages, instead of their number. The size of the entities is
+ * estimated with a {@link Weigher}, or with
+ * {@link ColumnarPage#estimateBytes()} for columnar pages. Least recently used pages are evicted when
+ * the cache exceeds its own limit or an optional {@link MemoryBudget} shared
+ * with other caches, e.g. the one of the VaadinSession. The most recently
+ * added page is always kept.
+ * <p>
+ * Cached pages are not serialized, the cache is empty after deserialization
+ * and is filled again lazily.
+ *
+ * @param <T> the type of the entities on the pages
+ */
+public class WeightedPageCache<T> implements PageCache<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Weigher<T> weigher;
+    private final long maxBytes;
+    private final MemoryBudget budget;
+    private transient LinkedHashMap<Integer, List<T>> pages;
+    private transient Map<Integer, Long> pageWeights;
+    private transient volatile long weight;
+
+    /**
+     * @param weigher the weigher used to estimate the size of the entities
+     * @param maxBytes the maximum estimated bytes held by this cache
+     */
+    public WeightedPageCache(Weigher<T> weigher, long maxBytes) {
+        this(weigher, maxBytes, null);
+    }
+
+    /**
+     * @param weigher the weigher used to estimate the size of the entities
+     * @param maxBytes the maximum estimated bytes held by this cache
+     * @param budget a budget shared with other caches, or null
+     */
+    public WeightedPageCache(Weigher<T> weigher, long maxBytes, MemoryBudget budget) {
+        this.weigher = weigher;
+        this.maxBytes = maxBytes;
+        this.budget = budget;
+    }
+
+    private Map<Integer, List<T>> getPages() {
+        if (pages == null) {
+            pages = new LinkedHashMap<>(16, 0.75f, true);
+            pageWeights = new LinkedHashMap<>();
+            weight = 0;
+        }
+        return pages;
+    }
+
+    /**
+     * @return the estimated bytes currently held by this cache
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+
+    @Override
+    public List<T> get(int pageIndex) {
+        return getPages().get(pageIndex);
+    }
+
+    @Override
+    public boolean containsPage(int pageIndex) {
+        return getPages().containsKey(pageIndex);
+    }
+
+    @Override
+    public void put(int pageIndex, List<T> page) {
+        remove(pageIndex);
+        long pageWeight = 0;
+        if (page instanceof ColumnarPage) {
+            pageWeight = ((ColumnarPage<T>) page).estimateBytes();
+        } else {
+            for (T entity : page) {
+                pageWeight += weigher.weigh(entity);
+            }
+        }
+        pages.put(pageIndex, page);
+        pageWeights.put(pageIndex, pageWeight);
+        weight += pageWeight;
+        if (budget != null) {
+            budget.register(this);
+        }
+        while (pages.size() > 1 && (weight > maxBytes
+                || budget != null && budget.isExceeded())) {
+            // eldest entry is the least recently used one
+            remove(pages.keySet().iterator().next());
+        }
+    }
+
+    @Override
+    public void remove(int pageIndex) {
+        if (getPages().remove(pageIndex) != null) {
+            weight -= pageWeights.remove(pageIndex);
+        }
+    }
+
+    @Override
+    public void clear() {
+        getPages().clear();
+        pageWeights.clear();
+        weight = 0;
+        if (budget != null) {
+            budget.unregister(this);
+        }
+    }
+
+    @Override
+    public void forEachPage(BiConsumer<Integer, List<T>> action) {
+        getPages().forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return getPages().size();
+    }
+
+}
@@ -15,10 +15,20 @@
  */
 package org.vaadin.viritin.grid;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.vaadin.viritin.cache.PageCache;
+import org.vaadin.viritin.cache.PageKey;
+import org.vaadin.viritin.cache.SingleFlight;
+import org.vaadin.viritin.util.BackendExecutors;
+
+import com.vaadin.data.provider.DataChangeEvent.DataRefreshEvent;
 import com.vaadin.data.provider.GridSortOrder;
 import com.vaadin.event.SortEvent;
 import com.vaadin.event.SortEvent.SortListener;
 import com.vaadin.server.SerializableSupplier;
+import com.vaadin.ui.UI;
 
 /**
  * A Grid which doesn't require you to report the size when doing lazy loading
@@ -61,9 +71,14 @@ public class LazyGrid<T> extends MGrid<T> {
 
 	};
 
+	private SerializableSupplier<Integer> countCallback;
+	private int countGeneration;
+	private boolean countPending;
+
 	private void resetContent() {
 		getDataCommunicator().reset();
-		setItems(fetchItemsCallback);
+		// sorting doesn't change the count
+		bind(fetchItemsCallback);
 	}
 
 	public LazyGrid() {
@@ -75,6 +90,10 @@ public class LazyGrid<T> extends MGrid<T> {
 		addSortListener(sortListener);
 	}
 
+	LazyGrid(SizelessPagingDataCommunicator<T> dataCommunicator) {
+		super(dataCommunicator);
+	}
+
 	protected SizelessPagingDataCommunicator<T> getSizelessPagingDataCommunicator() {
 		return (SizelessPagingDataCommunicator<T>) getDataCommunicator();
 	}
@@ -87,6 +106,75 @@ public class LazyGrid<T> extends MGrid<T> {
 	 * @param fetchItems the callback to return chuncks of data.
 	 */
 	public void setItems(FetchItemsCallback<T> fetchItems) {
+		countCallback = null;
+		countGeneration++;
+		countPending = false;
+		// the size of the previous data source doesn't apply
+		getSizelessPagingDataCommunicator().resetToSizeless();
+		bind(fetchItems);
+	}
+
+	/**
+	 * Creates a lazy binding to backend that starts in sizeless mode, but also
+	 * resolves the size of the data in the background. The first rows are
+	 * shown without waiting for a possibly slow count query. When the count
+	 * completes, the Grid switches to sized mode without reloading the rows
+	 * already fetched, so the scrollbar becomes accurate and the user can jump
+	 * to the end. The count is resolved again when the data is refreshed.
+	 * <p>
+	 * The count callback is called with the backend executor of the
+	 * communicator, or the shared one of {@link BackendExecutors}, without the
+	 * session lock. The result is delivered via UI.access, so server push
+	 * should be enabled.
+	 * 
+	 * @param fetchItems the callback to return chuncks of data.
+	 * @param countCallback the callback to return the total number of rows
+	 */
+	public void setItems(FetchItemsCallback<T> fetchItems,
+			SerializableSupplier<Integer> countCallback) {
+		setItems(fetchItems);
+		this.countCallback = countCallback;
+		startCount();
+	}
+
+	/**
+	 * Resolves the size of the data again in the background, if a count
+	 * callback has been given.
+	 */
+	public void refreshCount() {
+		if (countCallback != null) {
+			startCount();
+		}
+	}
+
+	private void startCount() {
+		final UI ui = getUI();
+		if (ui == null) {
+			// started when attached
+			countPending = true;
+			return;
+		}
+		countPending = false;
+		final int generation = ++countGeneration;
+		Executor executor = getSizelessPagingDataCommunicator().getBackendExecutor();
+		BackendExecutors.fetch(ui, executor != null ? executor : BackendExecutors.getShared(),
+				countCallback, count -> {
+					if (generation == countGeneration) {
+						// no count, stay in sizeless mode
+						getSizelessPagingDataCommunicator().setExactSize(count == null ? -1 : count);
+					}
+				});
+	}
+
+	@Override
+	public void attach() {
+		super.attach();
+		if (countPending && countCallback != null) {
+			startCount();
+		}
+	}
+
+	private void bind(FetchItemsCallback<T> fetchItems) {
 		SerializableSupplier<Integer> sizeCallback = () -> {
 			// This should never be called by the framework
 			// System.err.println("Size requested although should not be needed");
@@ -94,6 +182,13 @@ public class LazyGrid<T> extends MGrid<T> {
 		};
 		this.fetchItemsCallback = fetchItems;
 		super.setDataProvider(fetchItems, sizeCallback);
+		getDataProvider().addDataProviderListener(event -> {
+			if (countCallback != null && !(event instanceof DataRefreshEvent)) {
+				// the data may have changed, single item refreshes don't
+				// change the count
+				startCount();
+			}
+		});
 	}
 
 	/**
@@ -112,4 +207,82 @@ public class LazyGrid<T> extends MGrid<T> {
 		getSizelessPagingDataCommunicator().setPageSize(pageSize);
 	}
 
+	/**
+	 * Merges backend calls of this Grid with identical concurrent calls of
+	 * other Grids using the same single flight layer.
+	 * 
+	 * @param singleFlight the application scoped single flight layer, null to
+	 * disable
+	 * @param queryId the identity of the query, must implement equals and
+	 * hashCode
+	 * @see SizelessPagingDataCommunicator#setSingleFlight(SingleFlight, Object)
+	 */
+	public void setSingleFlight(SingleFlight<PageKey, List<?>> singleFlight, Object queryId) {
+		getSizelessPagingDataCommunicator().setSingleFlight(singleFlight, queryId);
+	}
+
+	/**
+	 * Makes the Grid fetch the next page from the backend in the background,
+	 * while the user is looking at the current rows.
+	 * 
+	 * @param backendExecutor the executor for background fetches, null to
+	 * fetch only on demand
+	 * @see SizelessPagingDataCommunicator#setBackendExecutor(Executor)
+	 */
+	public void setBackendExecutor(Executor backendExecutor) {
+		getSizelessPagingDataCommunicator().setBackendExecutor(backendExecutor);
+	}
+
+	/**
+	 * Makes the Grid push rows ahead of the scroll position, based on how
+	 * fast the user scrolls, to reduce round trips while fling-scrolling.
+	 * 
+	 * @param predictivePrefetch true to enable predictive prefetching
+	 * @see SizelessPagingDataCommunicator#setPredictivePrefetch(boolean)
+	 */
+	public void setPredictivePrefetch(boolean predictivePrefetch) {
+		getSizelessPagingDataCommunicator().setPredictivePrefetch(predictivePrefetch);
+	}
+
+	/**
+	 * Makes the Grid fetch rows in the background and push them to the client
+	 * when available, so that a slow backend doesn't block the whole UI. Uses
+	 * the shared executor of {@link BackendExecutors} unless a backend executor
+	 * has been set. Server push should be enabled.
+	 * 
+	 * @param asyncDelivery true to fetch rows asynchronously
+	 * @see SizelessPagingDataCommunicator#setAsyncDelivery(boolean)
+	 */
+	public void setAsyncDelivery(boolean asyncDelivery) {
+		SizelessPagingDataCommunicator<T> communicator = getSizelessPagingDataCommunicator();
+		if (asyncDelivery && communicator.getBackendExecutor() == null) {
+			communicator.setBackendExecutor(BackendExecutors.getShared());
+		}
+		communicator.setAsyncDelivery(asyncDelivery);
+	}
+
+	/**
+	 * Sets the cache used to keep recently fetched pages in memory, e.g. a
+	 * large one for read-mostly reference data or a tiny or expiring one for
+	 * volatile data.
+	 * 
+	 * @param pageCache the page cache
+	 * @see SizelessPagingDataCommunicator#setPageCache(PageCache)
+	 */
+	public void setPageCache(PageCache<T> pageCache) {
+		getSizelessPagingDataCommunicator().setPageCache(pageCache);
+	}
+
+	/**
+	 * Caches the JSON generated for the rows, so that renderers and value
+	 * providers are not run again when the user scrolls back to rows that
+	 * have already been sent.
+	 * 
+	 * @param rowJsonCache the cache, null to disable
+	 * @see SizelessPagingDataCommunicator#setRowJsonCache(RowJsonCache)
+	 */
+	public void setRowJsonCache(RowJsonCache<T> rowJsonCache) {
+		getSizelessPagingDataCommunicator().setRowJsonCache(rowJsonCache);
+	}
+
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Matti Tahvonen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.viritin.grid;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.vaadin.data.ValueProvider;
+import com.vaadin.shared.data.DataCommunicatorConstants;
+
+import elemental.json.Json;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+
+/**
+ * A bounded cache of the row JSON generated for items by the data generators
+ * of a Grid, used by {@link SizelessPagingDataCommunicator} and
+ * {@link SizelessDataCommunicator}. When rows are sent to the client again,
+ * e.g. when the user scrolls back, expensive renderers and value providers
+ * don't need to be run again.
+ * <p>
+ * Cached rows are dropped on refresh of the item or the whole data. If items
+ * can change without an explicit refresh, give a version provider, e.g. one
+ * returning the JPA version field or a hash of the displayed values, to
+ * detect changed items.
+ * <p>
+ * The cache should not be used with data generators that create state for
+ * each row, like component renderers or the details generator of Grid. They
+ * release the state in destroyData when the row is dropped from the client,
+ * but the cached row still refers to it, e.g. to a component that has been
+ * removed, when it is sent to the client again.
+ * <p>
+ * The cached rows are not serialized.
+ *
+ * @param <T> the type of the items
+ */
+public class RowJsonCache<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static class CachedRow implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object version;
+        private final JsonObject json;
+
+        CachedRow(Object version, JsonObject json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+    private final int maxItems;
+    private final ValueProvider<T, ?> versionProvider;
+    private transient LinkedHashMap<Object, CachedRow> rows;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxItems the maximum number of rows kept in the cache
+     */
+    public RowJsonCache(int maxItems) {
+        this(maxItems, null);
+    }
+
+    /**
+     * @param maxItems the maximum number of rows kept in the cache
+     * @param versionProvider gives a value that changes when the item
+     * changes, null if items change only with explicit refreshes
+     */
+    public RowJsonCache(int maxItems, ValueProvider<T, ?> versionProvider) {
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("maxItems must be at least 1");
+        }
+        this.maxItems = maxItems;
+        this.versionProvider = versionProvider;
+    }
+
+    private Map<Object, CachedRow> getRows() {
+        if (rows == null) {
+            rows = new LinkedHashMap<Object, CachedRow>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, CachedRow> eldest) {
+                    return size() > maxItems;
+                }
+            };
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the cached row of the item, or generates and caches it if not
+     * available. A cached row is returned as a copy with the client side key
+     * set to the current one, as keys change when items are dropped from the
+     * client.
+     *
+     * @param item the item
+     * @param id the identity of the item, as returned by the data provider
+     * @param key the current client side key of the item
+     * @param generator generates the row if it is not cached
+     * @return the row JSON
+     */
+    JsonObject get(T item, Object id, String key, Function<T, JsonObject> generator) {
+        final Object version = versionProvider == null ? null : versionProvider.apply(item);
+        CachedRow entry = getRows().get(id);
+        if (entry != null && Objects.equals(entry.version, version)) {
+            hits++;
+            return copyWithKey(entry.json, key);
+        }
+        misses++;
+        JsonObject json = generator.apply(item);
+        getRows().put(id, new CachedRow(version, json));
+        return json;
+    }
+
+    private static JsonObject copyWithKey(JsonObject json, String key) {
+        JsonObject copy = Json.createObject();
+        for (String name : json.keys()) {
+            JsonValue value = json.get(name);
+            copy.put(name, value);
+        }
+        copy.put(DataCommunicatorConstants.KEY, key);
+        return copy;
+    }
+
+    /**
+     * Drops the cached row of the item with the given identity.
+     *
+     * @param id the identity of the item
+     */
+    public void invalidate(Object id) {
+        getRows().remove(id);
+    }
+
+    /**
+     * Drops all cached rows.
+     */
+    public void invalidateAll() {
+        getRows().clear();
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public int size() {
+        return getRows().size();
+    }
+
+    /**
+     * @return the number of rows served from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of rows that had to be generated
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+}
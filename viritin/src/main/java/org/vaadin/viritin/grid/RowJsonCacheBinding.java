@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Matti Tahvonen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.viritin.grid;
+
+import java.io.Serializable;
+import java.util.function.Function;
+
+import com.vaadin.data.provider.DataCommunicator;
+import com.vaadin.data.provider.DataGenerator;
+
+import elemental.json.JsonObject;
+
+/**
+ * Connects the {@link RowJsonCache} of a data communicator to it: serves the
+ * rows via the cache and drops cached rows when items are refreshed.
+ *
+ * @param <T> the type of the items
+ */
+class RowJsonCacheBinding<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DataCommunicator<T> communicator;
+    private RowJsonCache<T> cache;
+    private DataGenerator<T> invalidator;
+
+    RowJsonCacheBinding(DataCommunicator<T> communicator) {
+        this.communicator = communicator;
+    }
+
+    RowJsonCache<T> getCache() {
+        return cache;
+    }
+
+    void setCache(final RowJsonCache<T> cache) {
+        if (invalidator != null) {
+            communicator.removeDataGenerator(invalidator);
+            invalidator = null;
+        }
+        this.cache = cache;
+        if (cache != null) {
+            invalidator = new DataGenerator<T>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public void generateData(T item, JsonObject json) {
+                    // rows are only invalidated
+                }
+
+                @Override
+                public void refreshData(T item) {
+                    cache.invalidate(communicator.getDataProvider().getId(item));
+                }
+
+                @Override
+                public void destroyAllData() {
+                    cache.invalidateAll();
+                }
+            };
+            communicator.addDataGenerator(invalidator);
+        }
+    }
+
+    /**
+     * @param data the item
+     * @param generator generates the row, i.e. the default implementation of
+     * the communicator
+     * @return the row JSON, from the cache if available
+     */
+    JsonObject getDataObject(T data, Function<T, JsonObject> generator) {
+        final RowJsonCache<T> rows = cache;
+        if (rows == null) {
+            return generator.apply(data);
+        }
+        return rows.get(data, communicator.getDataProvider().getId(data),
+                communicator.getKeyMapper().key(data), generator);
+    }
+
+    void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+}
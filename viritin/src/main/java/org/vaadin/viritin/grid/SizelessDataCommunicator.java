@@ -23,6 +23,7 @@ import com.vaadin.shared.data.DataCommunicatorClientRpc;
 
 import elemental.json.Json;
 import elemental.json.JsonArray;
+import elemental.json.JsonObject;
 
 /**
  *
@@ -34,6 +35,8 @@ public class SizelessDataCommunicator<T> extends DataCommunicator<T> {
             DataCommunicatorClientRpc.class);
     int knownSize = 0;
 
+    private final RowJsonCacheBinding<T> rowJsonCacheBinding = new RowJsonCacheBinding<>(this);
+
     @Override
     protected void sendDataToClient(boolean initial) {
         if (getDataProvider() == null) {
@@ -84,4 +87,31 @@ public class SizelessDataCommunicator<T> extends DataCommunicator<T> {
     public int getDataProviderSize() {
         return knownSize;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void reset() {
+        super.reset();
+        rowJsonCacheBinding.invalidateAll();
+    }
+
+    @Override
+    protected JsonObject getDataObject(T data) {
+        return rowJsonCacheBinding.getDataObject(data, super::getDataObject);
+    }
+
+    public RowJsonCache<T> getRowJsonCache() {
+        return rowJsonCacheBinding.getCache();
+    }
+
+    /**
+     * Sets a cache for the JSON generated for the rows, so that data generators
+     * don't need to be run again when rows are sent to the client again. Rows
+     * are dropped from the cache on refresh.
+     *
+     * @param rowJsonCache the cache, null to generate rows always (the default)
+     */
+    public void setRowJsonCache(RowJsonCache<T> rowJsonCache) {
+        rowJsonCacheBinding.setCache(rowJsonCache);
+    }
+
+}
@@ -15,18 +15,38 @@
  */
 package org.vaadin.viritin.grid;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.vaadin.viritin.cache.LruPageCache;
+import org.vaadin.viritin.cache.PageCache;
+import org.vaadin.viritin.cache.PageKey;
+import org.vaadin.viritin.cache.SingleFlight;
+import org.vaadin.viritin.util.BackendExecutors;
 
 import com.vaadin.data.provider.DataCommunicator;
+import com.vaadin.data.provider.DataProvider;
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
 import com.vaadin.shared.Range;
 import com.vaadin.shared.data.DataCommunicatorClientRpc;
+import com.vaadin.ui.UI;
 
 import elemental.json.Json;
 import elemental.json.JsonArray;
+import elemental.json.JsonObject;
 
 /**
  *
@@ -40,17 +60,36 @@ public class SizelessPagingDataCommunicator<T> extends DataCommunicator<T> {
 	DataCommunicatorClientRpc rpc = getRpcProxy(
             DataCommunicatorClientRpc.class);
     int knownSize = 0;
+    // rows the client has, more than known if rows were added to make it ask for more
+    private int clientSize = 0;
+    private int exactSize = -1;
+    
+    private final RowJsonCacheBinding<T> rowJsonCacheBinding = new RowJsonCacheBinding<>(this);
     
     private boolean useCache = true;
     
     private int pageSize = getMinPushSize()*2;
     
-    private Map<Integer,List<T>> pageCache = new LinkedHashMap(16, 0.75f, true ) {
-    	
-    	protected boolean removeEldestEntry(java.util.Map.Entry eldest) {
-    		return size() > CACHE_SIZE;
-    	};
-    };
+    private transient SingleFlight<PageKey, List<?>> singleFlight;
+    private Object queryId;
+    
+    private transient Executor backendExecutor;
+    private transient Map<Integer, CompletableFuture<List<T>>> warmingPages;
+    private int cacheGeneration;
+    
+    private boolean asyncDelivery;
+    private boolean predictivePrefetch;
+    private int maxPredictedRows = -1;
+    private int lastRequestOffset = -1;
+    private long lastRequestNanos;
+    private double scrollVelocity;
+    
+    private static final long SCROLL_HORIZON_MILLIS = 500;
+    private static final long GESTURE_TIMEOUT_MILLIS = 1000;
+    
+    private PageCache<T> pageCache = new LruPageCache<>(CACHE_SIZE);
+    private long cacheHits;
+    private long cacheMisses;
 
     @Override
     protected void sendDataToClient(boolean initial) {
@@ -59,15 +98,21 @@ public class SizelessPagingDataCommunicator<T> extends DataCommunicator<T> {
         }
         
         if (initial) {
-            rpc.reset(0);
+            // the client starts from scratch, e.g. after re-attach
+            knownSize = exactSize >= 0 ? exactSize : 0;
+            clientSize = knownSize;
+            rpc.reset(knownSize);
             if (reset) {
             	reset = false;
             }
         }
 
         if (reset) {
-        	pageCache.clear();
-        	rpc.reset(getDataProviderSize());
+        	clearPageCache();
+        	lastRequestOffset = -1;
+        	scrollVelocity = 0;
+        	clientSize = getDataProviderSize();
+        	rpc.reset(clientSize);
         	reset = false;
         }
 
@@ -76,22 +121,19 @@ public class SizelessPagingDataCommunicator<T> extends DataCommunicator<T> {
             int offset = requestedRows.getStart();
             // Always fetch some extra rows.
             int limit = requestedRows.length() + getMinPushSize();
-            List<T> rowsToPush = fetchItemsWithRange(offset, limit);
-            int lastIndex = offset + rowsToPush.size();
-            if (lastIndex > knownSize) {
-                int rowsToAdd = lastIndex - knownSize;
-                rpc.insertRows(knownSize,
-                        rowsToAdd + (rowsToPush.size() == limit ? 1 : 0));
-                knownSize = lastIndex;
-            } else if (rowsToPush.size() < requestedRows.length()) {
-                // Size decreased
-                int rowsToRemove = Math.max(
-                        requestedRows.length() - rowsToPush.size(),
-                        knownSize - lastIndex);
-                knownSize = lastIndex;
-                rpc.removeRows(knownSize, rowsToRemove);
+            int rowsAhead = predictivePrefetch ? predictRowsAhead(offset) : 0;
+            if (rowsAhead > 0) {
+                // push rows the user is about to scroll to, up to the end of
+                // the page as it is fetched anyway
+                final int pageSize = getPageSize();
+                int end = offset + limit + rowsAhead;
+                limit = (end + pageSize - 1) / pageSize * pageSize - offset;
+            }
+            if (isAsyncDeliveryUsed() && !isCached(offset, limit)) {
+                deliverAsynchronously(offset, limit, requestedRows.length(), rowsAhead);
+            } else {
+                deliver(offset, limit, requestedRows.length(), rowsAhead);
             }
-            pushData(offset, rowsToPush);
         }
 
         if (!getUpdatedData().isEmpty()) {
@@ -114,40 +156,435 @@ public class SizelessPagingDataCommunicator<T> extends DataCommunicator<T> {
     
 	@Override
 	public List<T> fetchItemsWithRange(final int offset, final int limit) {
-		// adapt to paged requests and merge
-		// TODO this could maybe be done more efficiently on an other layer
-		
-        final int pageSize = getPageSize();
-        final int startPage = (int) Math.floor((double) offset / pageSize);
-        final int endPage = (int) Math.floor((double) (offset + limit - 1) / pageSize);
-        if (startPage != endPage) {
-        	List<T> page0 = accessDataProvider(startPage*pageSize, pageSize);
-            List<T> page1;
-            if(page0.size() < pageSize) {
-            	page1 = Collections.EMPTY_LIST;
-            } else {
-                page1 = accessDataProvider(endPage*pageSize, pageSize);
-            }
-            page0 = page0.subList(offset % pageSize, page0.size());
-            page1 = page1.subList(0, Math.min(limit - page0.size(), page1.size()));
-            List<T> result = new ArrayList<>(page0);
-            result.addAll(page1);
-            return result;
-        } else {
-        	List<T> page0 = accessDataProvider(startPage*pageSize, pageSize);
-        	final int start = offset % pageSize;
-        	final int end = Math.min(start + limit, page0.size());
-            return page0.subList(start, end);
-        }
+		// adapt to paged requests, adjacent missing pages are fetched with
+		// one aligned query and the result is returned as a view to the pages
+		final int pageSize = getPageSize();
+		final int startPage = offset / pageSize;
+		final int endPage = (offset + limit - 1) / pageSize;
+		if (startPage == endPage) {
+			List<T> page0 = accessDataProvider(startPage*pageSize, pageSize);
+			final int start = offset % pageSize;
+			final int end = Math.min(start + limit, page0.size());
+			return page0.subList(Math.min(start, end), end);
+		}
+		return new PageRangeView<>(accessPages(startPage, endPage),
+				offset % pageSize, limit, pageSize);
 	}
-	
+
+	/**
+	 * Returns the given pages, from the page cache if possible. Adjacent
+	 * pages missing from the cache are fetched with one backend call, which
+	 * is then sliced into pages. Pages after the end of the data are left
+	 * out.
+	 *
+	 * @param firstPage the index of the first page
+	 * @param lastPage the index of the last page, inclusive
+	 * @return the pages
+	 */
+	protected List<List<T>> accessPages(int firstPage, int lastPage) {
+		final int pageSize = getPageSize();
+		List<List<T>> pages = new ArrayList<>(lastPage - firstPage + 1);
+		int page = firstPage;
+		while (page <= lastPage) {
+			int runEnd = page;
+			if (!useCache || !isAvailable(page)) {
+				while (runEnd < lastPage && (!useCache || !isAvailable(runEnd + 1))) {
+					runEnd++;
+				}
+			}
+			if (runEnd == page) {
+				List<T> entities = accessDataProvider(page * pageSize, pageSize);
+				pages.add(entities);
+				if (entities.size() < pageSize) {
+					break;
+				}
+				page++;
+				continue;
+			}
+			final int count = runEnd - page + 1;
+			List<T> rows = fetchFromBackend(page * pageSize, count * pageSize);
+			for (int i = 0; i < count; i++) {
+				// copied, so that a cached page doesn't keep the whole range
+				List<T> slice = new ArrayList<>(rows.subList(Math.min(i * pageSize, rows.size()),
+						Math.min((i + 1) * pageSize, rows.size())));
+				if (useCache) {
+					cacheMisses++;
+					pageCache.put(page + i, slice);
+				}
+				pages.add(slice);
+				if (slice.size() < pageSize) {
+					return pages;
+				}
+			}
+			page = runEnd + 1;
+		}
+		return pages;
+	}
+
+	private boolean isAvailable(int page) {
+		return pageCache.containsPage(page)
+				|| warmingPages != null && warmingPages.containsKey(page);
+	}
+
+	/**
+	 * A read-only view to a range spanning several pages, so that the rows
+	 * don't need to be copied to a new list.
+	 */
+	private static class PageRangeView<T> extends AbstractList<T> implements RandomAccess {
+
+		private final List<List<T>> pages;
+		private final int start;
+		private final int size;
+		private final int pageSize;
+
+		PageRangeView(List<List<T>> pages, int start, int limit, int pageSize) {
+			this.pages = pages;
+			this.start = start;
+			this.pageSize = pageSize;
+			int available = 0;
+			for (List<T> page : pages) {
+				available += page.size();
+				if (page.size() < pageSize) {
+					break;
+				}
+			}
+			this.size = Math.max(0, Math.min(limit, available - start));
+		}
+
+		@Override
+		public T get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			final int position = start + index;
+			return pages.get(position / pageSize).get(position % pageSize);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
 	protected List<T> accessDataProvider(final int offset, final int limit) {
 		if(useCache) {
 			final int page = offset/limit;
-			return pageCache.computeIfAbsent(page, p -> super.fetchItemsWithRange(offset, limit));
+			List<T> cached = pageCache.get(page);
+			if (cached != null) {
+				cacheHits++;
+				return cached;
+			}
+			cacheMisses++;
+			List<T> fetched = fetchPage(page, offset, limit);
+			pageCache.put(page, fetched);
+			return fetched;
 		} else {
-			return super.fetchItemsWithRange(offset, limit);
+			return fetchFromBackend(offset, limit);
+		}
+	}
+
+	private List<T> fetchPage(int page, int offset, int limit) {
+		CompletableFuture<List<T>> warming = warmingPages == null ? null : warmingPages.remove(page);
+		if (warming != null) {
+			try {
+				// typically already done, as the client scrolls slower
+				return warming.join();
+			} catch (CompletionException | CancellationException e) {
+				// the speculative fetch failed, try again
+			}
+		}
+		return fetchFromBackend(offset, limit);
+	}
+
+	private void clearPageCache() {
+		pageCache.clear();
+		cacheGeneration++;
+		if (warmingPages != null) {
+			warmingPages.clear();
+		}
+	}
+
+	private void deliver(int offset, int limit, int requestedLength, int rowsAhead) {
+		List<T> rowsToPush = fetchItemsWithRange(offset, limit);
+		int lastIndex = offset + rowsToPush.size();
+		if (lastIndex > knownSize) {
+			int rowsToAdd = lastIndex - knownSize;
+			// in sizeless mode, one extra row makes the client ask for more
+			int rowsToInsert = rowsToAdd + (rowsToPush.size() == limit && exactSize < 0 ? 1 : 0);
+			rpc.insertRows(knownSize, rowsToInsert);
+			clientSize += rowsToInsert;
+			knownSize = lastIndex;
+		} else if (rowsToPush.size() < requestedLength) {
+			// Size decreased
+			int rowsToRemove = Math.max(
+					requestedLength - rowsToPush.size(),
+					knownSize - lastIndex);
+			knownSize = lastIndex;
+			clientSize = Math.max(knownSize, clientSize - rowsToRemove);
+			rpc.removeRows(knownSize, rowsToRemove);
+		}
+		pushData(offset, rowsToPush);
+		if (rowsToPush.size() == limit) {
+			warmPages(offset + limit, Math.max(1, rowsAhead));
+		}
+		if (rowsAhead < 0) {
+			warmPages(offset + rowsAhead, -rowsAhead);
+		}
+	}
+
+	private boolean isAsyncDeliveryUsed() {
+		return asyncDelivery && backendExecutor != null && useCache && getUI() != null;
+	}
+
+	private boolean isCached(int offset, int limit) {
+		final int pageSize = getPageSize();
+		for (int page = offset / pageSize; page <= (offset + limit - 1) / pageSize; page++) {
+			if (!pageCache.containsPage(page)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Inserts placeholder rows for the requested range, fetches the missing
+	 * pages with the backend executor and pushes the rows via UI.access
+	 * once they are available. Results are dropped if the communicator has
+	 * been reset meanwhile, as the client then requests the rows again.
+	 */
+	private void deliverAsynchronously(final int offset, final int limit,
+			final int requestedLength, final int rowsAhead) {
+		final int pageSize = getPageSize();
+		List<CompletableFuture<List<T>>> pending = new ArrayList<>();
+		for (int page = offset / pageSize; page <= (offset + limit - 1) / pageSize; page++) {
+			if (!pageCache.containsPage(page)) {
+				warmPage(page);
+				CompletableFuture<List<T>> warming = warmingPages.get(page);
+				if (warming != null) {
+					pending.add(warming);
+				}
+			}
+		}
+		if (offset + requestedLength > knownSize) {
+			// empty rows until the data arrives
+			rpc.insertRows(knownSize, offset + requestedLength - knownSize);
+			clientSize += offset + requestedLength - knownSize;
+			knownSize = offset + requestedLength;
+		}
+		final UI ui = getUI();
+		final int generation = cacheGeneration;
+		CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[pending.size()]))
+				.whenComplete((result, failure) -> ui.access(() -> {
+					if (generation == cacheGeneration) {
+						// fetched pages are picked up from the pending fetches
+						deliver(offset, limit, requestedLength, rowsAhead);
+					}
+				}));
+	}
+
+	private void warmPages(int firstRow, int rows) {
+		final int pageSize = getPageSize();
+		for (int page = Math.max(0, firstRow) / pageSize; page <= (firstRow + rows - 1) / pageSize; page++) {
+			warmPage(page);
+		}
+	}
+
+	/**
+	 * Estimates how many rows the user scrolls during the next round trip,
+	 * based on the offsets and timing of the previous requests.
+	 *
+	 * @param offset the first row of the current request
+	 * @return the estimated number of rows, negative when scrolling up
+	 */
+	protected int predictRowsAhead(int offset) {
+		final long now = System.nanoTime();
+		if (lastRequestOffset >= 0) {
+			double elapsedMillis = (now - lastRequestNanos) / 1e6;
+			if (elapsedMillis > GESTURE_TIMEOUT_MILLIS) {
+				// a new scroll gesture
+				scrollVelocity = 0;
+			} else if (elapsedMillis > 0) {
+				double velocity = (offset - lastRequestOffset) * 1000 / elapsedMillis;
+				scrollVelocity = scrollVelocity == 0 ? velocity : (scrollVelocity + velocity) / 2;
+			}
+		}
+		lastRequestOffset = offset;
+		lastRequestNanos = now;
+		final int max = getMaxPredictedRows();
+		int predicted = (int) (scrollVelocity * SCROLL_HORIZON_MILLIS / 1000);
+		return Math.max(-max, Math.min(max, predicted));
+	}
+
+	/**
+	 * Fetches the given page to the page cache in the background, using the
+	 * backend executor. Does nothing if no backend executor is set or if the
+	 * page is already cached or being fetched. As the fetch is speculative,
+	 * failures are ignored; the page is then fetched again when needed.
+	 *
+	 * @param page the index of the page to fetch
+	 */
+	protected void warmPage(final int page) {
+		final UI ui = getUI();
+		if (backendExecutor == null || !useCache || ui == null
+				|| pageCache.containsPage(page)
+				|| warmingPages != null && warmingPages.containsKey(page)) {
+			return;
 		}
+		if (warmingPages == null) {
+			warmingPages = new HashMap<>();
+		}
+		final int generation = cacheGeneration;
+		final int pageSize = getPageSize();
+		final CompletableFuture<List<T>> warming = CompletableFuture.supplyAsync(
+				backendCall(page * pageSize, pageSize), backendExecutor);
+		warmingPages.put(page, warming);
+		warming.whenComplete((rows, failure) -> ui.access(() -> {
+			if (warmingPages != null && warmingPages.get(page) == warming) {
+				warmingPages.remove(page);
+			}
+			if (failure == null && generation == cacheGeneration
+					&& pageSize == getPageSize() && !pageCache.containsPage(page)) {
+				pageCache.put(page, rows);
+			}
+		}));
+	}
+
+	private List<T> fetchFromBackend(final int offset, final int limit) {
+		return backendCall(offset, limit).get();
+	}
+
+	/**
+	 * Prepares a backend call for the given range. The query, i.e. the
+	 * sorting and the filter, and the data provider are captured when this is
+	 * called, with the session lock, so the returned call can be executed in
+	 * a background thread.
+	 *
+	 * @param offset the first row
+	 * @param limit the number of rows
+	 * @return the backend call
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Supplier<List<T>> backendCall(final int offset, final int limit) {
+		final DataProvider<T, Object> dataProvider = (DataProvider) getDataProvider();
+		final List<QuerySortOrder> sortOrders = new ArrayList<>(getBackEndSorting());
+		final Query<T, Object> query = new Query<>(offset, limit, sortOrders,
+				getInMemorySorting(), getFilter());
+		final Supplier<List<T>> call = () -> dataProvider.fetch(query)
+				.collect(Collectors.toList());
+		final SingleFlight<PageKey, List<?>> flight = singleFlight;
+		if (flight == null) {
+			return call;
+		}
+		final String sortKey = sortOrders.stream()
+				.map(o -> o.getSorted() + " " + o.getDirection())
+				.collect(Collectors.joining(","));
+		// the row offset identifies the range, as ranges may span several pages
+		final PageKey key = PageKey.ofRange(queryId, sortKey, offset, limit);
+		return () -> (List<T>) flight.execute(key,
+				() -> Collections.unmodifiableList(call.get()));
+	}
+
+	/**
+	 * Configures the communicator to merge its backend calls with identical
+	 * concurrent calls of other communicators sharing the same single flight
+	 * layer, e.g. Grids in other sessions listing the same data. Calls are
+	 * considered identical if they have the same query identity, back end
+	 * sorting and range.
+	 * <p>
+	 * The query identity must cover everything else that affects the results,
+	 * like filters and the current user, if the results depend on it.
+	 *
+	 * @param singleFlight the application scoped single flight layer, null to
+	 * disable
+	 * @param queryId the identity of the query, must implement equals and
+	 * hashCode
+	 */
+	public void setSingleFlight(SingleFlight<PageKey, List<?>> singleFlight, Object queryId) {
+		if (singleFlight != null && queryId == null) {
+			throw new IllegalArgumentException("queryId is required with single flight");
+		}
+		this.singleFlight = singleFlight;
+		this.queryId = queryId;
+	}
+
+	public SingleFlight<PageKey, List<?>> getSingleFlight() {
+		return singleFlight;
+	}
+
+	/**
+	 * Sets an executor to fetch pages in the background. When set, the page
+	 * following the rows pushed to the client is fetched to the page cache
+	 * on the executor, while the user is looking at the current rows, and
+	 * handed to the page cache via UI.access. See {@link BackendExecutors}
+	 * for executors using virtual threads.
+	 * <p>
+	 * The data provider is called without the session lock, so it must be
+	 * thread safe and must not depend on e.g. UI.getCurrent(). The executor
+	 * is not serialized with the communicator.
+	 *
+	 * @param backendExecutor the executor for background fetches, null to
+	 * fetch only on demand (the default)
+	 */
+	public void setBackendExecutor(Executor backendExecutor) {
+		this.backendExecutor = backendExecutor;
+	}
+
+	public Executor getBackendExecutor() {
+		return backendExecutor;
+	}
+
+	/**
+	 * Enables asynchronous delivery of rows. When enabled and the requested
+	 * rows are not in the page cache, the communicator inserts empty
+	 * placeholder rows to the client, fetches the rows with the backend
+	 * executor without holding the session lock and pushes them to the client
+	 * via UI.access once they are available. A slow query then doesn't block
+	 * the rest of the UI.
+	 * <p>
+	 * Requires a backend executor and the page cache. Server push should be
+	 * enabled, otherwise the rows are sent with the next request of the
+	 * client.
+	 *
+	 * @param asyncDelivery true to fetch rows asynchronously
+	 * @see #setBackendExecutor(Executor)
+	 */
+	public void setAsyncDelivery(boolean asyncDelivery) {
+		this.asyncDelivery = asyncDelivery;
+	}
+
+	public boolean isAsyncDelivery() {
+		return asyncDelivery;
+	}
+
+	/**
+	 * Enables predictive prefetching. The communicator then estimates the
+	 * scroll velocity from the previous requests of the client and pushes
+	 * rows the user is about to scroll to along with the requested ones, so
+	 * that fast scrolling causes fewer round trips. If a backend executor is
+	 * set, pages further in the direction of travel, also upwards, are
+	 * fetched to the page cache in the background.
+	 *
+	 * @param predictivePrefetch true to enable predictive prefetching
+	 * @see #setBackendExecutor(Executor)
+	 */
+	public void setPredictivePrefetch(boolean predictivePrefetch) {
+		this.predictivePrefetch = predictivePrefetch;
+	}
+
+	public boolean isPredictivePrefetch() {
+		return predictivePrefetch;
+	}
+
+	/**
+	 * @return the maximum number of rows prefetched based on the scroll
+	 * velocity, by default two pages
+	 */
+	public int getMaxPredictedRows() {
+		return maxPredictedRows < 0 ? getPageSize() * 2 : maxPredictedRows;
+	}
+
+	public void setMaxPredictedRows(int maxPredictedRows) {
+		this.maxPredictedRows = maxPredictedRows;
 	}
 	
 	public int getPageSize() {
@@ -158,6 +595,97 @@ public class SizelessPagingDataCommunicator<T> extends DataCommunicator<T> {
 		this.pageSize = pageSize;
 	}
 	
+	/**
+	 * Switches the communicator to sized mode, e.g. when a count query run in
+	 * the background has completed. Rows are added to or removed from the
+	 * end of the client side grid to match the size, without resetting the
+	 * rows already fetched, so the scrollbar becomes accurate and the user can
+	 * jump to the end.
+	 *
+	 * @param exactSize the number of rows, -1 to return to sizeless mode
+	 */
+	public void setExactSize(int exactSize) {
+		this.exactSize = exactSize;
+		if (exactSize < 0) {
+			return;
+		}
+		// relative to the rows the client has, including the extra one
+		if (exactSize > clientSize) {
+			rpc.insertRows(clientSize, exactSize - clientSize);
+		} else if (exactSize < clientSize) {
+			rpc.removeRows(exactSize, clientSize - exactSize);
+		}
+		clientSize = exactSize;
+		knownSize = exactSize;
+	}
+
+	/**
+	 * Returns to sizeless mode for a new data source. Unlike
+	 * {@code setExactSize(-1)}, the rows of the previous data source are
+	 * forgotten, so the client is reset to an empty grid that grows again as
+	 * rows are fetched.
+	 */
+	void resetToSizeless() {
+		exactSize = -1;
+		knownSize = 0;
+		clientSize = 0;
+	}
+
+	/**
+	 * @return the exact number of rows, -1 if the size is not known
+	 */
+	public int getExactSize() {
+		return exactSize;
+	}
+
+	public PageCache<T> getPageCache() {
+		return pageCache;
+	}
+
+	/**
+	 * Sets the cache used to keep recently fetched pages in memory. By default
+	 * {@link #CACHE_SIZE} pages are kept in an {@link LruPageCache}. For
+	 * example a large cache suits read-mostly reference data, while a
+	 * {@link org.vaadin.viritin.cache.WeightedPageCache} bounds the memory
+	 * used and an {@link org.vaadin.viritin.cache.ExpiringPageCache} makes
+	 * changes in volatile data visible without explicit refreshes.
+	 *
+	 * @param pageCache the page cache, not null, see
+	 * {@link #setUseCache(boolean)} to disable caching
+	 */
+	public void setPageCache(PageCache<T> pageCache) {
+		this.pageCache = Objects.requireNonNull(pageCache);
+		clearPageCache();
+	}
+
+	/**
+	 * @return the number of page requests served from the page cache
+	 */
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * @return the number of page requests that needed a backend call
+	 */
+	public long getCacheMisses() {
+		return cacheMisses;
+	}
+
+	/**
+	 * @return the ratio of cache hits to all page requests, 0 if there have
+	 * been none
+	 */
+	public double getCacheHitRatio() {
+		long requests = cacheHits + cacheMisses;
+		return requests == 0 ? 0 : (double) cacheHits / requests;
+	}
+
+	public void resetCacheStatistics() {
+		cacheHits = 0;
+		cacheMisses = 0;
+	}
+
 	public void setUseCache(boolean useCache) {
 		this.useCache = useCache;
 	}
@@ -166,4 +694,30 @@ public class SizelessPagingDataCommunicator<T> extends DataCommunicator<T> {
 		return useCache;
 	}
 
+	@Override
+	public void reset() {
+		super.reset();
+		rowJsonCacheBinding.invalidateAll();
+	}
+
+	@Override
+	protected JsonObject getDataObject(T data) {
+		return rowJsonCacheBinding.getDataObject(data, super::getDataObject);
+	}
+
+	public RowJsonCache<T> getRowJsonCache() {
+		return rowJsonCacheBinding.getCache();
+	}
+
+	/**
+	* Sets a cache for the JSON generated for the rows, so that data generators
+	* don't need to be run again when rows are sent to the client again. Rows
+	* are dropped from the cache on refresh.
+	*
+	* @param rowJsonCache the cache, null to generate rows always (the default)
+	*/
+	public void setRowJsonCache(RowJsonCache<T> rowJsonCache) {
+		rowJsonCacheBinding.setCache(rowJsonCache);
+	}
+
 }
@@ -0,0 +1,126 @@
+package org.vaadin.viritin.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.vaadin.ui.UI;
+
+/**
+ * Executors for running backend calls of lazy loading components outside of
+ * the request thread, e.g. with
+ * {@link org.vaadin.viritin.LazyList#setPrefetchExecutor(Executor)} or
+ * {@link org.vaadin.viritin.grid.SizelessPagingDataCommunicator#setBackendExecutor(Executor)}.
+ * <p>
+ * On JDK 21 and newer, the executors run each call on a virtual thread, so
+ * slow backends don't pin platform threads. On older JDKs a bounded pool of
+ * daemon threads is used instead.
+ * <p>
+ * Note that the calls are done without the session lock and without the
+ * thread locals (e.g. {@link UI#getCurrent()}) of the request thread, so the
+ * providers must not rely on them.
+ */
+public final class BackendExecutors {
+
+    private static ExecutorService shared;
+    private static Boolean virtualThreadsAvailable;
+
+    private BackendExecutors() {
+    }
+
+    /**
+     * @return an application wide executor for backend calls, created on first
+     * use
+     */
+    public static synchronized ExecutorService getShared() {
+        if (shared == null) {
+            shared = newExecutor();
+        }
+        return shared;
+    }
+
+    /**
+     * Creates a new executor for backend calls, using virtual threads if
+     * available. The caller is responsible for shutting it down.
+     *
+     * @return a new executor
+     */
+    public static ExecutorService newExecutor() {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            return virtual;
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "viritin-backend-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(
+                Math.max(4, Runtime.getRuntime().availableProcessors() * 2),
+                threadFactory);
+    }
+
+    /**
+     * @return true if the executors use virtual threads, i.e. on JDK 21 and
+     * newer or with preview features enabled on JDK 19 and 20
+     */
+    public static synchronized boolean isVirtualThreadsAvailable() {
+        if (virtualThreadsAvailable == null) {
+            // the method exists on JDK 19 and 20, but throws without preview
+            ExecutorService probe = newVirtualThreadExecutor();
+            if (probe != null) {
+                probe.shutdown();
+            }
+            virtualThreadsAvailable = probe != null;
+        }
+        return virtualThreadsAvailable;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // compiled against Java 8, so look up the JDK 21 API reflectively
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Calls the backend with the given executor and delivers the result to
+     * the UI via {@link UI#access(com.vaadin.server.Command)}, so that the
+     * consumer can modify components. If push is not enabled, the changes are
+     * sent to the client with the next request. If the call fails, the
+     * exception is thrown within UI.access, so it ends up in the error
+     * handler of the session.
+     *
+     * @param <R> the type of the result
+     * @param ui the UI to deliver the result to
+     * @param executor the executor to call the backend with
+     * @param call the backend call
+     * @param consumer the consumer of the result, called with the session lock
+     * @return a future completing when the result has been fetched
+     */
+    public static <R> CompletableFuture<R> fetch(final UI ui, Executor executor,
+            Supplier<R> call, final Consumer<R> consumer) {
+        CompletableFuture<R> future = CompletableFuture.supplyAsync(call, executor);
+        future.whenComplete((result, failure) -> ui.access(() -> {
+            if (failure != null) {
+                throw failure instanceof CompletionException
+                        && failure.getCause() instanceof RuntimeException
+                        ? (RuntimeException) failure.getCause()
+                        : new CompletionException(failure);
+            }
+            consumer.accept(result);
+        }));
+        return future;
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.vaadin.viritin;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class AdaptivePageSizeTest {
+
+    @Test
+    public void shouldGrowPagesForSlowSequentialAccess() {
+        AdaptivePageSize adaptive = new AdaptivePageSize(10, 40);
+        Assert.assertThat(scroll(adaptive, 10, 50, 1, 150), is(20));
+        Assert.assertThat(adaptive.getPrefetchDepth(), is(2));
+        Assert.assertThat(scroll(adaptive, 20, 1000, 1, 150), is(40));
+    }
+
+    @Test
+    public void shouldKeepPageSizeForModerateLatency() {
+        AdaptivePageSize adaptive = new AdaptivePageSize(10, 40);
+        Assert.assertThat(scroll(adaptive, 20, 1000, 1, 50), is(20));
+        Assert.assertThat(adaptive.getPrefetchDepth(), is(1));
+    }
+
+    @Test
+    public void shouldAdjustPrefetchDepthToLatency() {
+        AdaptivePageSize adaptive = new AdaptivePageSize(40, 40);
+        Assert.assertThat(adaptive.getPrefetchDepth(), is(1));
+        scroll(adaptive, 40, 1000, 1, 150);
+        Assert.assertThat(adaptive.getPrefetchDepth(), is(2));
+        // the average follows the latency, so it takes a few adjustments
+        scroll(adaptive, 40, 2000, 1, 1);
+        Assert.assertThat(adaptive.getPrefetchDepth(), is(1));
+    }
+
+    @Test
+    public void shouldStayWithinBounds() {
+        AdaptivePageSize adaptive = new AdaptivePageSize(10, 25);
+        Assert.assertThat(scroll(adaptive, 20, 2000, 1, 150), is(25));
+
+        adaptive = new AdaptivePageSize(15, 160);
+        Assert.assertThat(scroll(adaptive, 80, 200, 397, 1), is(15));
+    }
+
+    /**
+     * Accesses the list like LazyList does: each access is recorded, and a
+     * fetch whenever the accessed page is not the one loaded last.
+     *
+     * @return the page size after the accesses
+     */
+    private static int scroll(AdaptivePageSize adaptive, int pageSize, int accesses,
+            int stride, double fetchMillis) {
+        int loadedPage = -1;
+        for (int i = 0; i < accesses; i++) {
+            final int index = i * stride % 100000;
+            if (adaptive.recordAccess(index)) {
+                int newPageSize = adaptive.adjust(pageSize);
+                if (newPageSize != pageSize) {
+                    pageSize = newPageSize;
+                    loadedPage = -1;
+                }
+            }
+            if (index / pageSize != loadedPage) {
+                loadedPage = index / pageSize;
+                adaptive.recordFetch(fetchMillis);
+            }
+        }
+        return pageSize;
+    }
+
+}
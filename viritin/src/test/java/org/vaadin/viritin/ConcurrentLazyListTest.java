@@ -0,0 +1,257 @@
+package org.vaadin.viritin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.viritin.cache.LruPageCache;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class ConcurrentLazyListTest {
+
+    private static final int SIZE = 1000;
+
+    private final List<Integer> requestedRows = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void shouldCallBackendOnceForConcurrentMissesOfSamePage() throws Exception {
+        final AtomicInteger backendCalls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ConcurrentLazyList<Integer> list = new ConcurrentLazyList<>(firstRow -> {
+            backendCalls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return page(firstRow, 10);
+        }, () -> SIZE, 10);
+
+        final int threads = 8;
+        final CountDownLatch ready = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final int index = 20 + i;
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    return list.get(index);
+                }));
+            }
+            // threads arriving after the call completes find the stored page
+            Assert.assertThat(ready.await(5, TimeUnit.SECONDS), is(true));
+            Assert.assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+            release.countDown();
+            for (int i = 0; i < threads; i++) {
+                Assert.assertThat(results.get(i).get(5, TimeUnit.SECONDS), is(20 + i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertThat(backendCalls.get(), is(1));
+    }
+
+    @Test
+    public void shouldNotKeepPageLoadedBeforeInvalidation() throws Exception {
+        assertPageLoadedBeforeChangeIsDropped(list -> list.invalidate(0));
+    }
+
+    @Test
+    public void shouldNotKeepPageLoadedBeforeReset() throws Exception {
+        assertPageLoadedBeforeChangeIsDropped(ConcurrentLazyList::reset);
+    }
+
+    private void assertPageLoadedBeforeChangeIsDropped(
+            Consumer<ConcurrentLazyList<Integer>> change) throws Exception {
+        final AtomicInteger version = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ConcurrentLazyList<Integer> list = new ConcurrentLazyList<>(firstRow -> {
+            int v = version.getAndIncrement();
+            if (v == 0) {
+                started.countDown();
+                await(release);
+            }
+            return Collections.nCopies(10, v);
+        }, () -> SIZE, 10);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> stale = executor.submit(() -> list.get(0));
+            Assert.assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+            change.accept(list);
+            release.countDown();
+            Assert.assertThat(stale.get(5, TimeUnit.SECONDS), is(0));
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertThat(list.get(0), is(1));
+        Assert.assertThat(list.get(1), is(1));
+    }
+
+    @Test
+    public void shouldPrefetchIntoPageCache() {
+        final List<Runnable> tasks = new ArrayList<>();
+        ConcurrentLazyList<Integer> list = createList();
+        list.setPageCache(new LruPageCache<>(2));
+        list.setPrefetchExecutor((Executor) tasks::add);
+
+        Assert.assertThat(list.get(5), is(5));
+        Assert.assertThat(tasks.size(), is(1));
+        tasks.remove(0).run();
+        Assert.assertThat(requestedRows.size(), is(2));
+        Assert.assertThat(list.get(15), is(15));
+        Assert.assertThat(list.indexOf(7), is(7));
+        Assert.assertThat(requestedRows.size(), is(2));
+    }
+
+    @Test
+    public void shouldIterateConcurrentlyWithPageCache() throws Exception {
+        final ConcurrentLazyList<Integer> list = createList();
+        list.setPageCache(new LruPageCache<>(3));
+
+        final int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<List<Integer>>> scans = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                scans.add(executor.submit(() -> {
+                    List<Integer> scanned = new ArrayList<>();
+                    for (Integer value : list) {
+                        scanned.add(value);
+                    }
+                    return scanned;
+                }));
+            }
+            Future<?> reader = executor.submit(() -> {
+                for (int i = 0; i < SIZE; i++) {
+                    int index = (i * 397) % SIZE;
+                    Assert.assertThat(list.get(index), is(index));
+                }
+            });
+            for (Future<List<Integer>> scan : scans) {
+                Assert.assertThat(scan.get(5, TimeUnit.SECONDS), is(page(0, SIZE)));
+            }
+            reader.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertThat(list.indexOf(999), is(999));
+        Assert.assertThat(list.contains(SIZE), is(false));
+    }
+
+    @Test
+    public void shouldRememberIndexesAndIgnoreOtherTypes() {
+        final AtomicInteger lookups = new AtomicInteger();
+        ConcurrentLazyList<Integer> list = createList();
+        list.setIndexProvider((Integer entity) -> {
+            lookups.incrementAndGet();
+            return entity;
+        });
+
+        final Integer entity = 500;
+        Assert.assertThat(list.indexOf(entity), is(500));
+        Assert.assertThat(list.indexOf(entity), is(500));
+        Assert.assertThat(lookups.get(), is(1));
+        Assert.assertThat(list.contains(entity), is(true));
+        Assert.assertThat(lookups.get(), is(1));
+
+        Assert.assertThat(list.indexOf("500"), is(-1));
+        Assert.assertThat(list.contains("500"), is(false));
+        Assert.assertThat(requestedRows.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldReportCacheHitsAndMisses() {
+        final List<Runnable> tasks = new ArrayList<>();
+        LazyListStatistics statistics = new LazyListStatistics();
+        ConcurrentLazyList<Integer> list = createList();
+        list.setMetricsListener(statistics);
+
+        for (int i = 0; i < 20; i++) {
+            list.get(i);
+        }
+        Assert.assertThat(statistics.getHits(), is(18L));
+        Assert.assertThat(statistics.getMisses(), is(2L));
+        Assert.assertThat(statistics.getFetches(), is(2L));
+
+        // prefetches are not misses
+        list.setPrefetchExecutor((Executor) tasks::add);
+        list.get(100);
+        tasks.forEach(Runnable::run);
+        list.get(110);
+        Assert.assertThat(statistics.getHits(), is(19L));
+        Assert.assertThat(statistics.getMisses(), is(3L));
+        Assert.assertThat(statistics.getFetches(), is(4L));
+    }
+
+    @Test
+    public void shouldEstimateSizeUntilCountResolves() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Integer> resolved = new ArrayList<>();
+        ConcurrentLazyList<Integer> list = createList();
+        list.setCountExecutor((Executor) tasks::add);
+        list.addSizeListener(resolved::add);
+
+        Assert.assertThat(list.size(), is(10));
+        Assert.assertThat(list.get(5), is(5));
+        Assert.assertThat(list.size(), is(20));
+        Assert.assertThat(list.isSizeKnown(), is(false));
+
+        tasks.remove(0).run();
+        Assert.assertThat(resolved, is(Collections.singletonList(SIZE)));
+        Assert.assertThat(list.size(), is(SIZE));
+        Assert.assertThat(list.isSizeKnown(), is(true));
+    }
+
+    @Test
+    public void shouldAdaptPageSize() {
+        ConcurrentLazyList<Integer> list = new ConcurrentLazyList<>((int firstRow, int maxResults) -> {
+            requestedRows.add(firstRow);
+            return page(firstRow, maxResults);
+        }, () -> SIZE, 80);
+        list.setAdaptivePageSize(10, 160);
+        // the backend takes no time
+        list.setNanoClock(() -> 0L);
+
+        for (int i = 0; i < 20; i++) {
+            int index = (i * 397) % SIZE;
+            Assert.assertThat(list.get(index), is(index));
+        }
+        Assert.assertThat(list.getPageSize() < 80, is(true));
+    }
+
+    private ConcurrentLazyList<Integer> createList() {
+        return new ConcurrentLazyList<>(firstRow -> {
+            requestedRows.add(firstRow);
+            return page(firstRow, 10);
+        }, () -> SIZE, 10);
+    }
+
+    private static List<Integer> page(int firstRow, int pageSize) {
+        List<Integer> page = new ArrayList<>();
+        for (int i = firstRow; i < Math.min(firstRow + pageSize, SIZE); i++) {
+            page.add(i);
+        }
+        return page;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,748 @@
+package org.vaadin.viritin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.viritin.cache.ColumnarPage;
+import org.vaadin.viritin.cache.ExpiringPageCache;
+import org.vaadin.viritin.cache.LfuPageCache;
+import org.vaadin.viritin.cache.LruPageCache;
+import org.vaadin.viritin.cache.MemoryBudget;
+import org.vaadin.viritin.cache.PageKey;
+import org.vaadin.viritin.cache.SharedPageCache;
+import org.vaadin.viritin.cache.SingleFlight;
+import org.vaadin.viritin.cache.Weigher;
+import org.vaadin.viritin.cache.WeightedPageCache;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class LazyListTest {
+
+    private static final int SIZE = 1000;
+
+    private final List<Integer> requestedRows = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void shouldPrefetchNextPageInAccessDirection() {
+        final List<Runnable> tasks = new ArrayList<>();
+        LazyList<Integer> list = createList(10);
+        list.setPrefetchExecutor((Executor) tasks::add);
+
+        Assert.assertThat(list.get(0), is(0));
+        Assert.assertThat(tasks.size(), is(1));
+        tasks.remove(0).run();
+        Assert.assertThat(requestedRows.size(), is(2));
+
+        // the page is served from the prefetched result
+        Assert.assertThat(list.get(15), is(15));
+        Assert.assertThat(requestedRows.size(), is(2));
+    }
+
+    @Test
+    public void shouldEstimateSizeUntilCountResolves() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Integer> resolved = new ArrayList<>();
+        LazyList<Integer> list = createList(10);
+        list.setCountExecutor((Executor) tasks::add);
+        list.addSizeListener(resolved::add);
+
+        Assert.assertThat(list.size(), is(10));
+        Assert.assertThat(list.get(5), is(5));
+        Assert.assertThat(list.size(), is(20));
+        Assert.assertThat(list.isSizeKnown(), is(false));
+
+        tasks.remove(0).run();
+        Assert.assertThat(resolved, is(Arrays.asList(SIZE)));
+        Assert.assertThat(list.size(), is(SIZE));
+        Assert.assertThat(list.isSizeKnown(), is(true));
+        Assert.assertThat(tasks.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldReportFailedCountWithoutCountingOnCallingThread() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+        final int[] counts = new int[1];
+        LazyList<Integer> list = new LazyList<>(firstRow -> page(firstRow, 10), () -> {
+            if (counts[0]++ == 0) {
+                throw new IllegalStateException("count failed");
+            }
+            return SIZE;
+        }, 10);
+        list.setCountExecutor((Executor) tasks::add);
+        list.addSizeListener(new LazyList.SizeListener() {
+            @Override
+            public void sizeResolved(int size) {
+            }
+
+            @Override
+            public void sizeFailed(Throwable cause) {
+                failures.add(cause);
+            }
+        });
+
+        list.size();
+        tasks.remove(0).run();
+        Assert.assertThat(failures.size(), is(1));
+        try {
+            list.size();
+            Assert.fail("The failure should be reported");
+        } catch (IllegalStateException e) {
+            Assert.assertThat(e.getMessage(), is("count failed"));
+        }
+        Assert.assertThat(counts[0], is(1));
+
+        // counted again in the background
+        Assert.assertThat(list.isSizeKnown(), is(false));
+        list.size();
+        tasks.remove(0).run();
+        Assert.assertThat(list.size(), is(SIZE));
+        Assert.assertThat(counts[0], is(2));
+    }
+
+    @Test
+    public void shouldKeepDistantPagesWithPageCache() {
+        LazyList<Integer> list = createList(10);
+        list.setPageCache(new LruPageCache<>(3));
+
+        Assert.assertThat(list.get(5), is(5));
+        Assert.assertThat(list.get(905), is(905));
+        Assert.assertThat(list.get(6), is(6));
+        Assert.assertThat(list.get(906), is(906));
+        Assert.assertThat(requestedRows.size(), is(2));
+        Assert.assertThat(list.indexOf(907), is(907));
+    }
+
+    @Test
+    public void shouldEvictLeastFrequentlyUsedPage() {
+        LazyList<Integer> list = createList(10);
+        list.setPageCache(new LfuPageCache<>(2));
+
+        list.get(0);
+        list.get(1);
+        list.get(500);
+        list.get(900);
+        // page 0 was used more often, so page 50 was evicted
+        list.get(2);
+        Assert.assertThat(requestedRows.size(), is(3));
+        list.get(501);
+        Assert.assertThat(requestedRows.size(), is(4));
+    }
+
+    @Test
+    public void shouldServeSecondListFromSharedPageCache() {
+        SharedPageCache sharedCache = new SharedPageCache(100, 1, TimeUnit.MINUTES);
+        LazyList<Integer> list1 = createList(10);
+        list1.setSharedPageCache(sharedCache, "all");
+        LazyList<Integer> list2 = createList(10);
+        list2.setSharedPageCache(sharedCache, "all");
+
+        Assert.assertThat(list1.get(5), is(5));
+        Assert.assertThat(list1.get(505), is(505));
+        Assert.assertThat(requestedRows.size(), is(2));
+
+        Assert.assertThat(list2.get(505), is(505));
+        Assert.assertThat(list2.get(5), is(5));
+        Assert.assertThat(requestedRows.size(), is(2));
+
+        // other queries don't share the pages
+        LazyList<Integer> list3 = createList(10);
+        list3.setSharedPageCache(sharedCache, "other");
+        list3.get(5);
+        Assert.assertThat(requestedRows.size(), is(3));
+    }
+
+    @Test
+    public void shouldNotStoreSharedPageFetchedBeforeInvalidation() {
+        SharedPageCache sharedCache = new SharedPageCache(100, 1, TimeUnit.MINUTES);
+        PageKey key = new PageKey("all", null, 0, 10);
+        PageKey otherKey = new PageKey("other", null, 0, 10);
+
+        long generation = sharedCache.getGeneration();
+        // the data is modified while the page is being fetched
+        sharedCache.invalidate("all");
+        sharedCache.put(key, page(0, 10), generation);
+        sharedCache.put(otherKey, page(0, 10), generation);
+        Assert.assertThat(sharedCache.get(key) == null, is(true));
+        Assert.assertThat(sharedCache.get(otherKey), is(page(0, 10)));
+
+        sharedCache.put(key, page(0, 10), sharedCache.getGeneration());
+        Assert.assertThat(sharedCache.get(key), is(page(0, 10)));
+
+        generation = sharedCache.getGeneration();
+        sharedCache.invalidateAll();
+        sharedCache.put(otherKey, page(0, 10), generation);
+        Assert.assertThat(sharedCache.size(), is(0));
+
+        // through lists: the first fetch races with an update of row 5
+        final AtomicInteger version = new AtomicInteger();
+        LazyList<Integer> list1 = new LazyList<>(firstRow -> {
+            List<Integer> rows = page(firstRow, 10);
+            if (version.get() == 0) {
+                version.incrementAndGet();
+                sharedCache.invalidate("all");
+            } else {
+                rows.set(5, -5);
+            }
+            return rows;
+        }, () -> SIZE, 10);
+        list1.setSharedPageCache(sharedCache, "all");
+        LazyList<Integer> list2 = createList(10);
+        list2.setSharedPageCache(sharedCache, "all");
+
+        Assert.assertThat(list1.get(5), is(5));
+        Assert.assertThat(sharedCache.size(), is(0));
+        Assert.assertThat(requestedRows.isEmpty(), is(true));
+        list1.reset();
+        Assert.assertThat(list1.get(5), is(-5));
+        Assert.assertThat(list2.get(5), is(-5));
+        Assert.assertThat(requestedRows.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldUseKeysetPaginationWhenPreviousKeyIsKnown() {
+        final List<Integer> requestedKeys = new ArrayList<>();
+        LazyList<Integer> list = createKeysetList(requestedKeys);
+
+        for (int i = 0; i < 35; i++) {
+            Assert.assertThat(list.get(i), is(i));
+        }
+        // jump uses offset, scrolling from there uses keys again
+        Assert.assertThat(list.get(505), is(505));
+        Assert.assertThat(list.get(515), is(515));
+        Assert.assertThat(requestedRows, is(Arrays.asList(0, 500)));
+        Assert.assertThat(requestedKeys, is(Arrays.asList(9, 19, 29, 509)));
+    }
+
+    @Test
+    public void shouldForgetKeysOfDistantPages() {
+        final List<Integer> requestedKeys = new ArrayList<>();
+        LazyList<Integer> list = createKeysetList(requestedKeys);
+
+        for (int i = 0; i < SIZE; i++) {
+            Assert.assertThat(list.get(i), is(i));
+        }
+        Assert.assertThat(requestedRows, is(Arrays.asList(0)));
+        Assert.assertThat(requestedKeys.size(), is(SIZE / 10 - 1));
+
+        // the key at the end of page 0 was dropped while scrolling
+        Assert.assertThat(list.get(15), is(15));
+        Assert.assertThat(requestedRows, is(Arrays.asList(0, 10)));
+    }
+
+    @Test
+    public void shouldLoadSeveralPagesWithOneRangeCall() {
+        final List<Integer> requestedRanges = new ArrayList<>();
+        LazyList<Integer> list = new LazyList<>((int firstRow, int maxResults) -> {
+            requestedRanges.add(firstRow);
+            requestedRanges.add(maxResults);
+            return page(firstRow, maxResults);
+        }, () -> SIZE, 10);
+
+        Assert.assertThat(list.get(0), is(0));
+        Assert.assertThat(list.get(25), is(25));
+        Assert.assertThat(list.get(15), is(15));
+        Assert.assertThat(requestedRanges, is(Arrays.asList(0, 10, 10, 20)));
+
+        requestedRanges.clear();
+        List<Integer> subList = list.subList(200, 260);
+        Assert.assertThat(subList.size(), is(60));
+        Assert.assertThat(subList.get(59), is(259));
+        Assert.assertThat(requestedRanges, is(Arrays.asList(200, 60)));
+    }
+
+    @Test
+    public void shouldLoadOnlyPagesMissingFromSharedCacheWithRangeCall() {
+        final List<Integer> requestedRanges = new ArrayList<>();
+        SharedPageCache sharedCache = new SharedPageCache(100, 1, TimeUnit.MINUTES);
+        final SingleFlight<PageKey, List<?>> singleFlight = new SingleFlight<>();
+        List<LazyList<Integer>> lists = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            LazyList<Integer> list = new LazyList<>((int firstRow, int maxResults) -> {
+                requestedRanges.add(firstRow);
+                requestedRanges.add(maxResults);
+                return page(firstRow, maxResults);
+            }, () -> SIZE, 10);
+            list.setSharedPageCache(sharedCache, "all");
+            list.setSingleFlight(singleFlight, "all");
+            lists.add(list);
+        }
+
+        lists.get(0).get(0);
+        lists.get(0).get(25);
+        Assert.assertThat(requestedRanges, is(Arrays.asList(0, 10, 10, 20)));
+
+        requestedRanges.clear();
+        Assert.assertThat(lists.get(1).get(25), is(25));
+        Assert.assertThat(lists.get(1).subList(0, 50).get(49), is(49));
+        Assert.assertThat(requestedRanges, is(Arrays.asList(30, 20)));
+
+        requestedRanges.clear();
+        int sum = 0;
+        for (Integer i : lists.get(0)) {
+            sum += i;
+        }
+        Assert.assertThat(sum, is(SIZE * (SIZE - 1) / 2));
+        Assert.assertThat(requestedRanges, is(Arrays.asList(50, 950)));
+    }
+
+    @Test
+    public void shouldResolveIndexesWithoutScanningTheList() {
+        LazyList<Integer> list = createList(10);
+        list.setIndexProvider(entity -> entity < SIZE ? entity : -1);
+
+        list.get(5);
+        list.get(500);
+        list.get(900);
+        list.get(300);
+        requestedRows.clear();
+        // page 0 is no more in memory, but its indexes are
+        Assert.assertThat(list.indexOf(7), is(7));
+        Assert.assertThat(list.indexOf(777), is(777));
+        Assert.assertThat(list.contains(5000), is(false));
+        Assert.assertThat(requestedRows.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldRememberIndexesOfPagesOnlyWhenEnabled() {
+        LazyList<Integer> list = createList(10);
+        list.get(5);
+        list.get(500);
+        list.get(900);
+        list.get(300);
+        requestedRows.clear();
+        // page 0 is no more in memory, so the list is scanned once
+        Assert.assertThat(list.indexOf(7), is(7));
+        Assert.assertThat(requestedRows.isEmpty(), is(false));
+        requestedRows.clear();
+        Assert.assertThat(list.indexOf(7), is(7));
+        Assert.assertThat(requestedRows.isEmpty(), is(true));
+
+        list = createList(10);
+        list.setIndexCacheSize(100);
+        list.get(5);
+        list.get(500);
+        list.get(900);
+        list.get(300);
+        requestedRows.clear();
+        Assert.assertThat(list.indexOf(8), is(8));
+        Assert.assertThat(requestedRows.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldStreamPageByPage() {
+        LazyList<Integer> list = createList(10);
+        Assert.assertThat(list.spliterator().hasCharacteristics(Spliterator.SUBSIZED), is(true));
+
+        long sum = list.parallelStream().mapToLong(Integer::longValue).sum();
+        Assert.assertThat(sum, is((long) SIZE * (SIZE - 1) / 2));
+        Assert.assertThat(list.stream().filter(i -> i % 2 == 0).count(), is((long) SIZE / 2));
+        // every page fetched exactly once per stream
+        Assert.assertThat(requestedRows.size(), is(2 * SIZE / 10));
+
+        // pages in memory are used, like in iterator()
+        list.get(0);
+        requestedRows.clear();
+        Assert.assertThat(list.stream().filter(i -> i >= 0).count(), is((long) SIZE));
+        Assert.assertThat(requestedRows.size(), is(SIZE / 10 - 1));
+        Assert.assertThat(requestedRows.contains(0), is(false));
+    }
+
+    @Test
+    public void shouldNotGrowCacheForLargeSubLists() {
+        LazyList<Integer> list = createList(10);
+        List<Integer> subList = list.subList(95, 195);
+        Assert.assertThat(subList.size(), is(100));
+        Assert.assertThat(subList.get(0), is(95));
+        Assert.assertThat(subList.get(99), is(194));
+        Assert.assertThat(list.getMaxPages(), is(3));
+        Assert.assertThat(requestedRows.size(), is(11));
+
+        // the tail of the range is available via the list too
+        Assert.assertThat(list.get(190), is(190));
+        Assert.assertThat(requestedRows.size(), is(11));
+    }
+
+    @Test
+    public void shouldCopySubListButNotPinnedSubList() {
+        LazyList<Integer> list = createList(10);
+        List<Integer> subList = list.subList(5, 25);
+        subList.add(-1);
+        Assert.assertThat(subList.size(), is(21));
+
+        List<Integer> pinned = list.pinnedSubList(5, 25);
+        Assert.assertThat(pinned.size(), is(20));
+        Assert.assertThat(pinned.get(19), is(24));
+        try {
+            pinned.add(-1);
+            Assert.fail("pinned sub list should be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+        Assert.assertThat(requestedRows.size(), is(3));
+    }
+
+    @Test
+    public void shouldShrinkPagesForFastBackendAndRandomAccess() {
+        LazyList<Integer> list = new LazyList<>((int firstRow, int maxResults) -> {
+            requestedRows.add(firstRow);
+            return page(firstRow, maxResults);
+        }, () -> SIZE, 80);
+        list.setAdaptivePageSize(10, 160);
+        // the backend takes no time
+        list.setNanoClock(() -> 0L);
+
+        for (int i = 0; i < 20; i++) {
+            int index = (i * 397) % SIZE;
+            Assert.assertThat(list.get(index), is(index));
+        }
+        Assert.assertThat(list.getPageSize() < 80, is(true));
+        Assert.assertThat(list.getPrefetchDepth(), is(1));
+    }
+
+    @Test
+    public void shouldGrowPagesForSlowBackendAndSequentialAccess() {
+        final AtomicLong clock = new AtomicLong();
+        final List<Integer> requestedSizes = new ArrayList<>();
+        LazyList<Integer> list = new LazyList<>((int firstRow, int maxResults) -> {
+            requestedSizes.add(maxResults);
+            // every call takes 150ms
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(150));
+            return page(firstRow, maxResults);
+        }, () -> SIZE, 10);
+        list.setAdaptivePageSize(10, 40);
+        list.setNanoClock(clock::get);
+
+        for (int i = 0; i < SIZE; i++) {
+            Assert.assertThat(list.get(i), is(i));
+        }
+        Assert.assertThat(list.getPageSize(), is(40));
+        Assert.assertThat(list.getPrefetchDepth(), is(2));
+        Assert.assertThat(requestedSizes.get(0), is(10));
+        Assert.assertThat(requestedSizes.contains(20), is(true));
+        Assert.assertThat(Collections.max(requestedSizes), is(40));
+    }
+
+    @Test
+    public void shouldEvictPagesWhenSharedBudgetIsExceeded() {
+        MemoryBudget budget = new MemoryBudget(2500);
+        WeightedPageCache<Integer> cache1 = new WeightedPageCache<>(Weigher.perEntity(100), 2000, budget);
+        WeightedPageCache<Integer> cache2 = new WeightedPageCache<>(Weigher.perEntity(100), 2000, budget);
+        LazyList<Integer> list1 = createList(10);
+        list1.setPageCache(cache1);
+        LazyList<Integer> list2 = createList(10);
+        list2.setPageCache(cache2);
+
+        list1.get(0);
+        list1.get(100);
+        list1.get(200);
+        // limited by the cache itself
+        Assert.assertThat(cache1.getWeight(), is(2000L));
+        list2.get(0);
+        // limited by the shared budget
+        Assert.assertThat(cache2.getWeight(), is(1000L));
+        Assert.assertThat(budget.getUsage(), is(3000L));
+        list2.get(100);
+        Assert.assertThat(cache2.getWeight(), is(1000L));
+    }
+
+    @Test
+    public void shouldLeaveCachedPagesOutInCompactSerialization() throws Exception {
+        LazyList<Integer> list = new LazyList<>(new SerializablePagingProvider(), () -> SIZE, 10);
+        list.setMetricsListener(new LazyListStatistics());
+        list.get(0);
+        list.get(10);
+        int fullSize = serialize(list).length;
+
+        list.setCompactSerialization(true);
+        byte[] compact = serialize(list);
+        Assert.assertThat(compact.length < fullSize, is(true));
+
+        @SuppressWarnings("unchecked")
+        LazyList<Integer> deserialized = (LazyList<Integer>) new ObjectInputStream(
+                new ByteArrayInputStream(compact)).readObject();
+        Assert.assertThat(deserialized.isSizeKnown(), is(false));
+        // shared by many lists, so not serialized
+        Assert.assertThat(deserialized.getMetricsListener() == null, is(true));
+        Assert.assertThat(deserialized.get(15), is(15));
+        Assert.assertThat(deserialized.size(), is(SIZE));
+    }
+
+    @Test
+    public void shouldReportCacheHitsMissesAndResets() {
+        LazyListStatistics statistics = new LazyListStatistics();
+        LazyList<Integer> list = createList(10);
+        list.setMetricsListener(statistics);
+
+        for (int i = 0; i < 20; i++) {
+            list.get(i);
+        }
+        list.get(500);
+        Assert.assertThat(list.size(), is(SIZE));
+
+        Assert.assertThat(statistics.getHits(), is(18L));
+        Assert.assertThat(statistics.getMisses(), is(3L));
+        Assert.assertThat(statistics.getResets(), is(1L));
+        Assert.assertThat(statistics.getFetches(), is(3L));
+        Assert.assertThat(statistics.getRowsFetched(), is(30L));
+        Assert.assertThat(statistics.getCounts(), is(1L));
+    }
+
+    @Test
+    public void shouldShareInFlightFetchBetweenLists() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final SingleFlight<PageKey, List<?>> singleFlight = new SingleFlight<>();
+        // lists arriving after the call has completed find the page here
+        final SharedPageCache sharedCache = new SharedPageCache(100, 1, TimeUnit.MINUTES);
+        final List<LazyList<Integer>> lists = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            LazyList<Integer> list = new LazyList<>(firstRow -> {
+                requestedRows.add(firstRow);
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return page(firstRow, 10);
+            }, () -> SIZE, 10);
+            list.setSharedPageCache(sharedCache, "all");
+            list.setSingleFlight(singleFlight, "all");
+            lists.add(list);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(lists.size());
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            final CountDownLatch ready = new CountDownLatch(lists.size());
+            for (LazyList<Integer> list : lists) {
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    return list.get(42);
+                }));
+            }
+            Assert.assertThat(ready.await(5, TimeUnit.SECONDS), is(true));
+            Assert.assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+            release.countDown();
+            for (Future<Integer> result : results) {
+                Assert.assertThat(result.get(5, TimeUnit.SECONDS), is(42));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertThat(requestedRows.size(), is(1));
+        Assert.assertThat(singleFlight.getInFlightCount(), is(0));
+    }
+
+    @Test
+    public void shouldReloadOnlyInvalidatedPages() {
+        LazyList<Integer> list = createList(10);
+        list.get(0);
+        list.get(10);
+        list.get(20);
+        Assert.assertThat(list.size(), is(SIZE));
+
+        list.invalidate(15);
+        Assert.assertThat(list.get(5), is(5));
+        Assert.assertThat(list.get(25), is(25));
+        Assert.assertThat(requestedRows, is(Arrays.asList(0, 10, 20)));
+        Assert.assertThat(list.get(15), is(15));
+        Assert.assertThat(requestedRows, is(Arrays.asList(0, 10, 20, 10)));
+        Assert.assertThat(list.isSizeKnown(), is(true));
+    }
+
+    @Test
+    public void shouldReplaceEntityWithoutCallingBackend() {
+        LazyList<Integer> list = createList(10);
+        list.get(0);
+        list.get(10);
+
+        Assert.assertThat(list.replace(12, -12), is(true));
+        Assert.assertThat(list.get(12), is(-12));
+        Assert.assertThat(list.indexOf(-12), is(12));
+        Assert.assertThat(list.replace(500, -500), is(false));
+        Assert.assertThat(requestedRows.size(), is(2));
+    }
+
+    @Test
+    public void shouldScanInLargeBatchesWithoutEvictingPages() {
+        final List<Integer> requestedRanges = new ArrayList<>();
+        LazyList<Integer> list = new LazyList<>((int firstRow, int maxResults) -> {
+            requestedRanges.add(firstRow);
+            return page(firstRow, maxResults);
+        }, () -> SIZE, 10);
+        list.setScanBatchSize(400);
+        list.get(505);
+        requestedRanges.clear();
+
+        int sum = 0;
+        for (Integer i : list) {
+            sum += i;
+        }
+        Assert.assertThat(sum, is(SIZE * (SIZE - 1) / 2));
+        Assert.assertThat(list.contains(SIZE + 1), is(false));
+        // the page in memory is not fetched again
+        Assert.assertThat(requestedRanges, is(Arrays.asList(0, 400, 510, 800, 0, 400, 510, 800)));
+        requestedRanges.clear();
+        Assert.assertThat(list.get(506), is(506));
+        Assert.assertThat(requestedRanges.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldScanViaStreamProvider() {
+        LazyList<Integer> list = createList(10);
+        final boolean[] closed = new boolean[1];
+        final AtomicInteger opened = new AtomicInteger();
+        list.setStreamProvider(() -> {
+            opened.incrementAndGet();
+            return page(0, SIZE).stream().onClose(() -> closed[0] = true);
+        });
+
+        Assert.assertThat(list.indexOf(777), is(777));
+        Assert.assertThat(closed[0], is(true));
+        closed[0] = false;
+        Assert.assertThat(list.contains(778), is(true));
+        Assert.assertThat(closed[0], is(true));
+        try (Stream<Integer> stream = list.stream()) {
+            Assert.assertThat(stream.count(), is((long) SIZE));
+        }
+        Assert.assertThat(requestedRows.isEmpty(), is(true));
+        Assert.assertThat(opened.get(), is(3));
+
+        // an iterator can't be closed, so it doesn't open a stream
+        Iterator<Integer> iterator = list.iterator();
+        Assert.assertThat(iterator.next(), is(0));
+        Assert.assertThat(opened.get(), is(3));
+        Assert.assertThat(requestedRows.isEmpty(), is(false));
+    }
+
+    @Test
+    public void shouldMaterializeRowsFromColumnarPages() {
+        final AtomicInteger materialized = new AtomicInteger();
+        LazyList<String> list = new LazyList<>((int firstRow, int maxResults) -> {
+            int rows = Math.min(maxResults, SIZE - firstRow);
+            long[] ids = new long[rows];
+            String[] groups = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                ids[i] = firstRow + i;
+                groups[i] = new String(ids[i] % 2 == 0 ? "even" : "odd");
+            }
+            return ColumnarPage.of(row -> {
+                materialized.incrementAndGet();
+                return row.getLong(0) + " " + row.getString(1);
+            }, ids, groups);
+        }, () -> SIZE, 10);
+        WeightedPageCache<String> cache = new WeightedPageCache<>(Weigher.perEntity(1000), 10000);
+        list.setPageCache(cache);
+        list.setIndexCacheSize(100);
+
+        Assert.assertThat(list.get(0), is("0 even"));
+        Assert.assertThat(list.get(25), is("25 odd"));
+        // the pages are not indexed up front
+        Assert.assertThat(materialized.get(), is(2));
+        Assert.assertThat(list.indexOf("13 odd"), is(13));
+        // estimated from the columns, not with the weigher
+        Assert.assertThat(cache.getWeight() < 1000, is(true));
+    }
+
+    @Test
+    public void shouldDeduplicateStringsWithoutModifyingColumns() {
+        String[] names = {new String("a"), new String("a"), null};
+        ColumnarPage<String> page = ColumnarPage.of(row -> row.getString(0), (Object) names);
+
+        Assert.assertThat(page.get(0) == page.get(1), is(true));
+        Assert.assertThat(page.get(2) == null, is(true));
+        // the caller's array is left as it was
+        Assert.assertThat(names[0] == names[1], is(false));
+    }
+
+    @Test
+    public void shouldRefetchExpiredPages() {
+        final AtomicLong clock = new AtomicLong();
+        LazyList<Integer> list = createList(10);
+        list.setPageCache(new ExpiringPageCache<>(new LruPageCache<>(10), 50, TimeUnit.MILLISECONDS, clock::get));
+
+        list.get(0);
+        clock.set(50);
+        list.get(1);
+        Assert.assertThat(requestedRows.size(), is(1));
+        clock.set(51);
+        list.get(2);
+        Assert.assertThat(requestedRows, is(Arrays.asList(0, 0)));
+    }
+
+    private static byte[] serialize(Object o) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(o);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static class SerializablePagingProvider implements LazyList.PagingProvider<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public List<Integer> findEntities(int firstRow) {
+            return page(firstRow, 10);
+        }
+    }
+
+    private static List<Integer> page(int firstRow, int pageSize) {
+        List<Integer> page = new ArrayList<>();
+        for (int i = firstRow; i < Math.min(firstRow + pageSize, SIZE); i++) {
+            page.add(i);
+        }
+        return page;
+    }
+
+    private LazyList<Integer> createKeysetList(List<Integer> requestedKeys) {
+        return new LazyList<>(new LazyList.KeysetPagingProvider<Integer, Integer>() {
+            @Override
+            public List<Integer> findEntitiesAfter(Integer lastKey) {
+                requestedKeys.add(lastKey);
+                return page(lastKey + 1, 10);
+            }
+
+            @Override
+            public Integer getKey(Integer entity) {
+                return entity;
+            }
+
+            @Override
+            public List<Integer> findEntities(int firstRow) {
+                requestedRows.add(firstRow);
+                return page(firstRow, 10);
+            }
+        }, () -> SIZE, 10);
+    }
+
+    private LazyList<Integer> createList(int pageSize) {
+        return new LazyList<>(firstRow -> {
+            requestedRows.add(firstRow);
+            return page(firstRow, pageSize);
+        }, () -> SIZE, pageSize);
+    }
+
+}
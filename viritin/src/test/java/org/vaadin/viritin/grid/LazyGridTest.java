@@ -0,0 +1,90 @@
+package org.vaadin.viritin.grid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.shared.Range;
+import com.vaadin.shared.data.DataCommunicatorClientRpc;
+
+import elemental.json.JsonArray;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class LazyGridTest {
+
+    private static final int SIZE = 1000;
+
+    /**
+     * Records the calls to the client instead of sending them.
+     */
+    private static class RecordingCommunicator extends SizelessPagingDataCommunicator<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        final List<String> clientCalls = new ArrayList<>();
+
+        RecordingCommunicator() {
+            rpc = new DataCommunicatorClientRpc() {
+                @Override
+                public void reset(int size) {
+                    clientCalls.add("reset " + size);
+                }
+
+                @Override
+                public void setData(int firstIndex, JsonArray data) {
+                }
+
+                @Override
+                public void updateData(JsonArray data) {
+                }
+
+                @Override
+                public void insertRows(int firstRowIndex, int count) {
+                    clientCalls.add("insert " + firstRowIndex + " " + count);
+                }
+
+                @Override
+                public void removeRows(int firstRowIndex, int count) {
+                    clientCalls.add("remove " + firstRowIndex + " " + count);
+                }
+            };
+        }
+
+        void request(int offset, int length) {
+            setPushRows(Range.withLength(offset, length));
+            sendDataToClient(false);
+        }
+
+        @Override
+        protected void pushData(int firstIndex, List<Integer> data) {
+        }
+    }
+
+    @Test
+    public void shouldStartSizelessFromEmptyAfterCountedItems() {
+        RecordingCommunicator communicator = new RecordingCommunicator();
+        LazyGrid<Integer> grid = new LazyGrid<>(communicator);
+        grid.setItems(LazyGridTest::fetch, () -> SIZE);
+        communicator.request(0, 40);
+        // as when the count completes in the background
+        communicator.setExactSize(SIZE);
+        communicator.clientCalls.clear();
+
+        grid.setItems(LazyGridTest::fetch);
+        communicator.request(0, 40);
+        Assert.assertThat(communicator.getExactSize(), is(-1));
+        Assert.assertThat(communicator.clientCalls.get(0), is("reset 0"));
+        Assert.assertThat(communicator.getDataProviderSize() < SIZE, is(true));
+    }
+
+    private static Stream<Integer> fetch(List<QuerySortOrder> sortOrder, int offset, int limit) {
+        return IntStream.range(offset, Math.min(offset + limit, SIZE)).boxed();
+    }
+
+}
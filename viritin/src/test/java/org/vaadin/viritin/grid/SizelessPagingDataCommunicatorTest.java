@@ -0,0 +1,372 @@
+package org.vaadin.viritin.grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.viritin.cache.LruPageCache;
+
+import com.vaadin.data.provider.DataProvider;
+import com.vaadin.server.Command;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.shared.Range;
+import com.vaadin.shared.data.DataCommunicatorClientRpc;
+import com.vaadin.shared.data.DataCommunicatorConstants;
+import com.vaadin.ui.UI;
+
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+
+import static org.hamcrest.CoreMatchers.is;
+
+public class SizelessPagingDataCommunicatorTest {
+
+    private static final int SIZE = 1000;
+
+    private final List<String> queries = new ArrayList<>();
+
+    /**
+     * Records the calls to the client and the backend, instead of sending
+     * them. Background fetches and UI.access calls are queued, so tests can
+     * run them when they like.
+     */
+    private static class TestCommunicator extends SizelessPagingDataCommunicator<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        final List<String> clientCalls = new ArrayList<>();
+        final List<String> pushed = new ArrayList<>();
+        final List<Runnable> backendTasks = new ArrayList<>();
+        final List<Command> accessQueue = new ArrayList<>();
+        final UI ui = new UI() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void init(VaadinRequest request) {
+            }
+
+            @Override
+            public Future<Void> access(Command command) {
+                accessQueue.add(command);
+                return null;
+            }
+        };
+        boolean attached;
+
+        TestCommunicator() {
+            rpc = new DataCommunicatorClientRpc() {
+                @Override
+                public void reset(int size) {
+                    clientCalls.add("reset " + size);
+                }
+
+                @Override
+                public void setData(int firstIndex, JsonArray data) {
+                }
+
+                @Override
+                public void updateData(JsonArray data) {
+                }
+
+                @Override
+                public void insertRows(int firstRowIndex, int count) {
+                    clientCalls.add("insert " + firstRowIndex + " " + count);
+                }
+
+                @Override
+                public void removeRows(int firstRowIndex, int count) {
+                    clientCalls.add("remove " + firstRowIndex + " " + count);
+                }
+            };
+        }
+
+        void request(int offset, int length) {
+            setPushRows(Range.withLength(offset, length));
+            sendDataToClient(false);
+        }
+
+        void sendInitial() {
+            setPushRows(Range.withLength(0, 0));
+            sendDataToClient(true);
+        }
+
+        void runBackendTasks() {
+            while (!backendTasks.isEmpty()) {
+                backendTasks.remove(0).run();
+            }
+        }
+
+        void runAccessQueue() {
+            while (!accessQueue.isEmpty()) {
+                accessQueue.remove(0).execute();
+            }
+        }
+
+        @Override
+        protected void pushData(int firstIndex, List<Integer> data) {
+            pushed.add(firstIndex + "+" + data.size());
+        }
+
+        @Override
+        public UI getUI() {
+            return attached ? ui : null;
+        }
+    }
+
+    private TestCommunicator createCommunicator() {
+        TestCommunicator communicator = new TestCommunicator();
+        communicator.setDataProvider(DataProvider.fromCallbacks(query -> {
+            queries.add(query.getOffset() + "+" + query.getLimit());
+            return IntStream.range(query.getOffset(),
+                    Math.min(query.getOffset() + query.getLimit(), SIZE)).boxed();
+        }, query -> SIZE), null);
+        return communicator;
+    }
+
+    @Test
+    public void shouldPushRowsAheadWhenScrollingFast() {
+        TestCommunicator communicator = createCommunicator();
+        communicator.setPredictivePrefetch(true);
+        // page size is twice the minimum push size
+        Assert.assertThat(communicator.getPageSize(), is(80));
+
+        communicator.request(0, 40);
+        Assert.assertThat(communicator.pushed, is(Collections.singletonList("0+80")));
+
+        // the next rows requested right away, i.e. fast scrolling; two pages
+        // are pushed ahead at most, rounded up to the end of the page
+        communicator.request(40, 40);
+        Assert.assertThat(communicator.pushed.get(1), is("40+280"));
+        Assert.assertThat(queries.size(), is(2));
+    }
+
+    @Test
+    public void shouldLimitPredictedRows() {
+        TestCommunicator communicator = createCommunicator();
+        communicator.setPredictivePrefetch(true);
+        communicator.setMaxPredictedRows(0);
+
+        communicator.request(0, 40);
+        communicator.request(40, 40);
+        Assert.assertThat(communicator.pushed.get(1), is("40+80"));
+    }
+
+    @Test
+    public void shouldPushOnlyRequestedRowsWithoutPrediction() {
+        TestCommunicator communicator = createCommunicator();
+
+        communicator.request(0, 40);
+        communicator.request(40, 40);
+        Assert.assertThat(communicator.pushed.get(1), is("40+80"));
+    }
+
+    @Test
+    public void shouldDeliverRowsAsynchronously() {
+        TestCommunicator communicator = createAsyncCommunicator();
+
+        communicator.request(0, 40);
+        // placeholders until the data arrives
+        Assert.assertThat(communicator.clientCalls, is(Collections.singletonList("insert 0 40")));
+        Assert.assertThat(communicator.pushed.isEmpty(), is(true));
+        Assert.assertThat(queries.isEmpty(), is(true));
+
+        communicator.runBackendTasks();
+        Assert.assertThat(communicator.pushed.isEmpty(), is(true));
+        communicator.runAccessQueue();
+        Assert.assertThat(communicator.pushed, is(Collections.singletonList("0+80")));
+        Assert.assertThat(communicator.clientCalls.get(1), is("insert 40 41"));
+        Assert.assertThat(queries, is(Collections.singletonList("0+80")));
+        Assert.assertThat(communicator.getPageCache().containsPage(0), is(true));
+    }
+
+    @Test
+    public void shouldDropRowsFetchedBeforeReset() {
+        TestCommunicator communicator = createAsyncCommunicator();
+
+        communicator.request(0, 40);
+        communicator.reset();
+        communicator.request(0, 0);
+        communicator.runBackendTasks();
+        communicator.runAccessQueue();
+        // the client requests the rows again after the reset
+        Assert.assertThat(communicator.pushed.isEmpty(), is(true));
+        Assert.assertThat(communicator.getPageCache().containsPage(0), is(false));
+    }
+
+    @Test
+    public void shouldRetryFailedBackgroundFetchSilently() {
+        TestCommunicator communicator = new TestCommunicator();
+        final int[] calls = new int[1];
+        communicator.setDataProvider(DataProvider.fromCallbacks(query -> {
+            if (calls[0]++ == 0) {
+                throw new IllegalStateException("connection lost");
+            }
+            return IntStream.range(query.getOffset(), query.getOffset() + query.getLimit()).boxed();
+        }, query -> SIZE), null);
+        enableAsyncDelivery(communicator);
+
+        communicator.request(0, 40);
+        communicator.runBackendTasks();
+        // the failed fetch doesn't end up in the error handler
+        communicator.runAccessQueue();
+        Assert.assertThat(communicator.pushed, is(Collections.singletonList("0+80")));
+        Assert.assertThat(calls[0], is(2));
+    }
+
+    @Test
+    public void shouldCountCacheHitsAndMisses() {
+        TestCommunicator communicator = createCommunicator();
+        communicator.setPageCache(new LruPageCache<>(2));
+
+        communicator.request(0, 40);
+        communicator.request(0, 40);
+        communicator.request(10, 20);
+        Assert.assertThat(communicator.getCacheMisses(), is(1L));
+        Assert.assertThat(communicator.getCacheHits(), is(2L));
+        Assert.assertThat(communicator.getCacheHitRatio(), is(2.0 / 3));
+        Assert.assertThat(queries.size(), is(1));
+
+        communicator.resetCacheStatistics();
+        Assert.assertThat(communicator.getCacheHitRatio(), is(0.0));
+        communicator.setUseCache(false);
+        communicator.request(0, 40);
+        Assert.assertThat(communicator.getCacheMisses(), is(0L));
+        Assert.assertThat(queries.size(), is(2));
+    }
+
+    @Test
+    public void shouldFetchAdjacentMissingPagesWithOneQuery() {
+        TestCommunicator communicator = createCommunicator();
+        communicator.setPageCache(new LruPageCache<>(10));
+
+        communicator.request(100, 200);
+        // pages 1-4, aligned to the page size
+        Assert.assertThat(queries, is(Collections.singletonList("80+320")));
+        Assert.assertThat(communicator.pushed, is(Collections.singletonList("100+240")));
+        for (int page = 1; page <= 4; page++) {
+            List<Integer> cached = communicator.getPageCache().get(page);
+            Assert.assertThat(cached.get(0), is(page * 80));
+            // a copy of the slice, not a view keeping the whole range
+            Assert.assertThat(cached.getClass() == ArrayList.class, is(true));
+        }
+
+        queries.clear();
+        communicator.request(0, 400);
+        Assert.assertThat(queries, is(Arrays.asList("0+80", "400+80")));
+        Assert.assertThat(communicator.pushed.get(1), is("0+440"));
+    }
+
+    @Test
+    public void shouldReuseCachedRowJsonUntilInvalidated() {
+        TestCommunicator communicator = createCommunicator();
+        final List<Integer> generated = new ArrayList<>();
+        communicator.addDataGenerator((item, json) -> {
+            generated.add(item);
+            json.put("v", "value " + item);
+        });
+        RowJsonCache<Integer> cache = new RowJsonCache<>(10);
+        communicator.setRowJsonCache(cache);
+
+        JsonObject first = communicator.getDataObject(1);
+        JsonObject second = communicator.getDataObject(1);
+        Assert.assertThat(generated, is(Collections.singletonList(1)));
+        Assert.assertThat(second.getString("v"), is("value 1"));
+        Assert.assertThat(second.getString(DataCommunicatorConstants.KEY),
+                is(first.getString(DataCommunicatorConstants.KEY)));
+
+        // the cached row is not modified when the key changes
+        JsonObject rekeyed = cache.get(1, 1, "other", item -> null);
+        Assert.assertThat(rekeyed.getString(DataCommunicatorConstants.KEY), is("other"));
+        Assert.assertThat(second.getString(DataCommunicatorConstants.KEY),
+                is(first.getString(DataCommunicatorConstants.KEY)));
+
+        communicator.refresh(1);
+        communicator.getDataObject(1);
+        Assert.assertThat(generated, is(Arrays.asList(1, 1)));
+
+        communicator.getDataObject(2);
+        communicator.reset();
+        Assert.assertThat(cache.size(), is(0));
+        Assert.assertThat(cache.getHits(), is(2L));
+    }
+
+    @Test
+    public void shouldSwitchBetweenSizelessAndExactSize() {
+        TestCommunicator communicator = createCommunicator();
+        communicator.request(0, 0);
+        communicator.clientCalls.clear();
+
+        communicator.request(0, 40);
+        // one extra row makes the client ask for more
+        Assert.assertThat(communicator.clientCalls, is(Collections.singletonList("insert 0 81")));
+
+        // rows are added to the end, not reset
+        communicator.setExactSize(SIZE);
+        Assert.assertThat(communicator.clientCalls.get(1), is("insert 81 919"));
+        communicator.request(40, 40);
+        Assert.assertThat(communicator.clientCalls.size(), is(2));
+
+        communicator.setExactSize(500);
+        Assert.assertThat(communicator.clientCalls.get(2), is("remove 500 500"));
+
+        communicator.setExactSize(-1);
+        Assert.assertThat(communicator.getExactSize(), is(-1));
+        Assert.assertThat(communicator.getDataProviderSize(), is(500));
+        Assert.assertThat(communicator.clientCalls.size(), is(3));
+    }
+
+    @Test
+    public void shouldStartFromResetSizeOnInitialResponse() {
+        TestCommunicator communicator = createCommunicator();
+        communicator.request(0, 40);
+        communicator.clientCalls.clear();
+
+        // e.g. re-attached, the client has no rows
+        communicator.sendInitial();
+        Assert.assertThat(communicator.getDataProviderSize(), is(0));
+        communicator.request(0, 40);
+        Assert.assertThat(communicator.clientCalls, is(Arrays.asList("reset 0", "insert 0 81")));
+
+        communicator.setExactSize(SIZE);
+        communicator.sendInitial();
+        Assert.assertThat(communicator.getDataProviderSize(), is(SIZE));
+        communicator.request(960, 40);
+        Assert.assertThat(communicator.clientCalls.get(communicator.clientCalls.size() - 1),
+                is("reset " + SIZE));
+    }
+
+    @Test
+    public void shouldForgetExactSizeWhenResetToSizeless() {
+        TestCommunicator communicator = createCommunicator();
+        communicator.request(0, 40);
+        communicator.setExactSize(SIZE);
+        communicator.clientCalls.clear();
+
+        // a new data source without a count
+        communicator.resetToSizeless();
+        communicator.reset();
+        communicator.request(0, 40);
+        Assert.assertThat(communicator.getExactSize(), is(-1));
+        Assert.assertThat(communicator.clientCalls, is(Arrays.asList("reset 0", "insert 0 81")));
+    }
+
+    private TestCommunicator createAsyncCommunicator() {
+        TestCommunicator communicator = createCommunicator();
+        enableAsyncDelivery(communicator);
+        return communicator;
+    }
+
+    private static void enableAsyncDelivery(TestCommunicator communicator) {
+        communicator.attached = true;
+        communicator.setBackendExecutor(communicator.backendTasks::add);
+        communicator.setAsyncDelivery(true);
+        communicator.request(0, 0);
+        communicator.clientCalls.clear();
+    }
+
+}